@@ -0,0 +1,111 @@
+package frc.utils;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.DriveConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks the pieces of {@code DriveSubsystem.drive()} that don't touch hardware: the rate limiter and the
+ * kinematics/desaturation step, both through WPILib and through the preallocated {@link SwerveModuleBuffer}, and the
+ * {@link SwerveSetpointGenerator} that replaced the latter in the drive loop.
+ */
+@State(Scope.Thread)
+public class DrivePipelineBenchmark {
+  private static final int SAMPLES = 1024;
+  private static final double LOOP_PERIOD = 0.02;
+
+  private final double[] xSpeeds = new double[SAMPLES];
+  private final double[] ySpeeds = new double[SAMPLES];
+  private final double[] rotations = new double[SAMPLES];
+  private int index = 0;
+  private double time = 0.0;
+
+  private SwerveRateLimiter rateLimiter;
+  private SwerveModuleBuffer moduleSetpoints;
+  private SwerveModuleBuffer generatedSetpoints;
+  private SwerveSetpointGenerator setpointGenerator;
+
+  @Setup public void setup() {
+    // Simulated joystick inputs, including direction reversals that hit every branch of the rate limiter.
+    final var random = new Random(4546);
+    for (int i = 0; i < SAMPLES; i++) {
+      xSpeeds[i] = random.nextDouble() * 2 - 1;
+      ySpeeds[i] = random.nextDouble() * 2 - 1;
+      rotations[i] = random.nextDouble() * 2 - 1;
+    }
+
+    rateLimiter = new SwerveRateLimiter(
+            DriveConstants.DIRECTION_SLEW_RATE,
+            DriveConstants.MAGNITUDE_SLEW_RATE,
+            DriveConstants.ROTATIONAL_SLEW_RATE,
+            time);
+    moduleSetpoints = new SwerveModuleBuffer(DriveConstants.MODULE_LOCATIONS);
+    generatedSetpoints = new SwerveModuleBuffer(DriveConstants.MODULE_LOCATIONS);
+    setpointGenerator = new SwerveSetpointGenerator(
+            generatedSetpoints,
+            DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            DriveConstants.MAX_MODULE_STEERING_VELOCITY,
+            DriveConstants.MAX_DRIVE_ACCELERATION);
+  }
+
+  private int next() {
+    index = (index + 1) & (SAMPLES - 1);
+    return index;
+  }
+
+  @Benchmark public double rateLimit() {
+    final int i = next();
+    time += LOOP_PERIOD;
+    rateLimiter.calculate(xSpeeds[i], ySpeeds[i], rotations[i], time);
+    return rateLimiter.getXSpeed() + rateLimiter.getYSpeed() + rateLimiter.getRotation();
+  }
+
+  @Benchmark public SwerveModuleState[] wpilibKinematics() {
+    final int i = next();
+    final var states = DriveConstants.DRIVE_KINEMATICS.toSwerveModuleStates(new ChassisSpeeds(
+            xSpeeds[i] * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            ySpeeds[i] * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            rotations[i] * DriveConstants.MAX_ANGULAR_SPEED));
+    SwerveDriveKinematics.desaturateWheelSpeeds(states, DriveConstants.MAX_SPEED_METERS_PER_SECOND);
+    return states;
+  }
+
+  @Benchmark public double[] bufferKinematics() {
+    final int i = next();
+    moduleSetpoints.fromChassisSpeeds(
+            xSpeeds[i] * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            ySpeeds[i] * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            rotations[i] * DriveConstants.MAX_ANGULAR_SPEED);
+    moduleSetpoints.desaturate(DriveConstants.MAX_SPEED_METERS_PER_SECOND);
+    return moduleSetpoints.speeds;
+  }
+
+  @Benchmark public double[] rateLimitedDrive() {
+    final int i = next();
+    time += LOOP_PERIOD;
+    rateLimiter.calculate(xSpeeds[i], ySpeeds[i], rotations[i], time);
+    moduleSetpoints.fromChassisSpeeds(
+            rateLimiter.getXSpeed() * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            rateLimiter.getYSpeed() * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            rateLimiter.getRotation() * DriveConstants.MAX_ANGULAR_SPEED);
+    moduleSetpoints.desaturate(DriveConstants.MAX_SPEED_METERS_PER_SECOND);
+    return moduleSetpoints.speeds;
+  }
+
+  @Benchmark public double[] setpointGenerator() {
+    final int i = next();
+    setpointGenerator.generate(
+            xSpeeds[i] * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            ySpeeds[i] * DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+            rotations[i] * DriveConstants.MAX_ANGULAR_SPEED,
+            LOOP_PERIOD);
+    return generatedSetpoints.speeds;
+  }
+}
@@ -0,0 +1,45 @@
+package frc.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+@State(Scope.Thread)
+public class SwerveUtilsBenchmark {
+  private static final int SAMPLES = 1024;
+
+  private final double[] current = new double[SAMPLES];
+  private final double[] target = new double[SAMPLES];
+  private int index = 0;
+
+  @Setup public void setup() {
+    // Span a few wraps in both directions, so every branch of WrapAngle() gets exercised.
+    final var random = new Random(4546);
+    for (int i = 0; i < SAMPLES; i++) {
+      current[i] = (random.nextDouble() - 0.5) * 8 * Math.PI;
+      target[i] = (random.nextDouble() - 0.5) * 8 * Math.PI;
+    }
+  }
+
+  private int next() {
+    index = (index + 1) & (SAMPLES - 1);
+    return index;
+  }
+
+  @Benchmark public double stepTowardsCircular() {
+    final int i = next();
+    return SwerveUtils.StepTowardsCircular(current[i], target[i], 0.05);
+  }
+
+  @Benchmark public double wrapAngle() {
+    return SwerveUtils.WrapAngle(current[next()]);
+  }
+
+  @Benchmark public double angleDifference() {
+    final int i = next();
+    return SwerveUtils.AngleDifference(current[i], target[i]);
+  }
+}
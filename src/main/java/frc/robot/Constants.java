@@ -5,6 +5,12 @@
 package frc.robot;
 
 import com.revrobotics.CANSparkMax.IdleMode;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
@@ -31,6 +37,10 @@ public final class Constants {
     public static final double MAX_SPEED_METERS_PER_SECOND = 4.8;
     public static final double MAX_ANGULAR_SPEED = 2 * Math.PI; // radians per second
 
+    // What the modules can physically do, used to keep module setpoints reachable
+    public static final double MAX_MODULE_STEERING_VELOCITY = 4 * Math.PI; // radians per second
+    public static final double MAX_DRIVE_ACCELERATION = 8.0; // meters per second squared
+
     public static final double DIRECTION_SLEW_RATE = 1.2; // radians per second
     public static final double MAGNITUDE_SLEW_RATE = 1.8; // percent per second (1 = 100%)
     public static final double ROTATIONAL_SLEW_RATE = 2.0; // percent per second (1 = 100%)
@@ -40,11 +50,14 @@ public final class Constants {
     // Distance between centers of right and left wheels on robot
     public static final double WHEEL_BASE = Units.inchesToMeters(32);
     // Distance between front and back wheels on robot
-    public static final SwerveDriveKinematics DRIVE_KINEMATICS = new SwerveDriveKinematics(
+    // Module locations relative to the center of the robot: front left, front right, back left, back right
+    public static final Translation2d[] MODULE_LOCATIONS = {
             new Translation2d(WHEEL_BASE / 2, TRACK_WIDTH / 2),
             new Translation2d(WHEEL_BASE / 2, -TRACK_WIDTH / 2),
             new Translation2d(-WHEEL_BASE / 2, TRACK_WIDTH / 2),
-            new Translation2d(-WHEEL_BASE / 2, -TRACK_WIDTH / 2));
+            new Translation2d(-WHEEL_BASE / 2, -TRACK_WIDTH / 2)
+    };
+    public static final SwerveDriveKinematics DRIVE_KINEMATICS = new SwerveDriveKinematics(MODULE_LOCATIONS);
 
     // Angular offsets of the modules relative to the chassis in radians
     public static final double FRONT_LEFT_CHASSIS_ANGULAR_OFFSET = -Math.PI / 2 - Math.PI/ 2;
@@ -77,6 +90,21 @@ public final class Constants {
     public static final int FRONT_LEFT_TURNING_CAN_ID = 23;
 
     public static final boolean GYRO_REVERSED = true;
+
+    // Odometry runs on its own notifier thread so the pose is sampled faster than the 20 ms robot loop. It never runs
+    // faster than the position and velocity status frames arrive either (see ModuleConstants.StatusFrameProfile),
+    // since sampling between frames only reads the same values again.
+    public static final double ODOMETRY_FREQUENCY_HZ = 100.0;
+
+    // Heading hold: while there's no rotation input, field relative driving holds the heading it was captured at.
+    public static final boolean HEADING_HOLD_DEFAULT = false;
+    public static final double HEADING_HOLD_P = 4.0; // radians per second per radian
+    // Damping on the gyro rate, rather than on the differenced heading
+    public static final double HEADING_HOLD_D = 0.2; // radians per second per radian per second
+    public static final TrapezoidProfile.Constraints HEADING_HOLD_CONSTRAINTS = new TrapezoidProfile.Constraints(
+            MAX_ANGULAR_SPEED, 4 * Math.PI);
+    // The heading is captured once the robot has stopped turning after the driver lets go of rotation
+    public static final double HEADING_CAPTURE_RATE = 0.2; // radians per second
   }
 
   public static final class ModuleConstants {
@@ -103,6 +131,9 @@ public final class Constants {
     public static final double DRIVING_ENCODER_VELOCITY_FACTOR = ((WHEEL_DIAMETER_METERS * Math.PI)
             / DRIVING_MOTOR_REDUCTION) / 60.0; // meters per second
 
+    // The MAXSwerve turning gearbox: 9424:203
+    public static final double TURNING_MOTOR_REDUCTION = 9424.0 / 203;
+
     public static final double TURNING_ENCODER_POSITION_FACTOR = (2 * Math.PI); // radians
     public static final double TURNING_ENCODER_VELOCITY_FACTOR = (2 * Math.PI) / 60.0; // radians per second
 
@@ -112,10 +143,19 @@ public final class Constants {
     public static final double DRIVING_P = 0.04;
     public static final double DRIVING_I = 0;
     public static final double DRIVING_D = 0;
-    public static final double DRIVING_FF = 1 / DRIVE_WHEEL_FREE_SPEED_RPS;
+    // The driving feedforward is computed on the roboRIO from the model below and sent as an arbitrary
+    // feedforward in volts, so the SPARK MAX's own velocity feedforward is unused.
+    public static final double DRIVING_FF = 0;
     public static final double DRIVING_MIN_OUTPUT = -1;
     public static final double DRIVING_MAX_OUTPUT = 1;
 
+    // Driving motor feedforward model. kV starts from the motor's free speed; characterize the robot to refine these.
+    public static final double DRIVING_KS = 0.1; // volts
+    public static final double DRIVING_KV = 12.0 / DRIVE_WHEEL_FREE_SPEED_RPS; // volts per meter per second
+    public static final double DRIVING_KA = 0.3; // volts per meter per second squared
+    // The SPARKS MAX scale their output to behave as if the battery were at this voltage
+    public static final double NOMINAL_VOLTAGE = 12.0;
+
     public static final double TURNING_P = 0.25;
     public static final double TURNING_I = 0;
     public static final double TURNING_D = 0;
@@ -128,11 +168,48 @@ public final class Constants {
 
     public static final int DRIVING_MOTOR_CURRENT_LIMIT = 50; // amps
     public static final int TURNING_MOTOR_CURRENT_LIMIT = 20; // amps
+
+    /**
+     * SPARK MAX periodic status frame periods in milliseconds, indexed by status frame:
+     * <ul>
+     *   <li>0 - Applied output, faults</li>
+     *   <li>1 - Velocity, temperature, bus voltage, current</li>
+     *   <li>2 - Position</li>
+     *   <li>3 - Analog sensor</li>
+     *   <li>4 - Alternate encoder</li>
+     *   <li>5 - Duty cycle absolute encoder position</li>
+     *   <li>6 - Duty cycle absolute encoder velocity</li>
+     * </ul>
+     * Frames we never read are slowed down to keep the CAN bus free for the ones we do.
+     */
+    public enum StatusFrameProfile {
+      COMPETITION(
+              new int[] { 10, 10, 10, 500, 500, 500, 500 },
+              new int[] { 10, 20, 500, 500, 500, 10, 500 }),
+      CHARACTERIZATION(
+              new int[] { 10, 5, 5, 500, 500, 500, 500 },
+              new int[] { 10, 20, 500, 500, 500, 10, 20 }),
+      IDLE(
+              new int[] { 100, 100, 100, 500, 500, 500, 500 },
+              new int[] { 100, 100, 500, 500, 500, 100, 500 });
+
+      public final int[] drivingPeriodsMs;
+      public final int[] turningPeriodsMs;
+
+      StatusFrameProfile(int[] drivingPeriodsMs, int[] turningPeriodsMs) {
+        this.drivingPeriodsMs = drivingPeriodsMs;
+        this.turningPeriodsMs = turningPeriodsMs;
+      }
+    }
+
+    public static final StatusFrameProfile DEFAULT_STATUS_FRAME_PROFILE = StatusFrameProfile.COMPETITION;
   }
 
   public static final class IOConstants {
     public static final int DRIVER_CONTROLLER_PORT = 0;
     public static final double DRIVE_DEADBAND = 0.02;
+    // Whether to log driver inputs every cycle, so a match can be replayed with DriveReplay.
+    public static final boolean RECORD_DRIVE_INPUTS = true;
   }
 
   public static final class AutoConstants {
@@ -141,6 +218,15 @@ public final class Constants {
     public static final double MAX_ANGULAR_SPEED_RADIANS_PER_SECOND = Math.PI;
     public static final double MAX_ANGULAR_SPEED_RADIANS_PER_SECOND_SQUARED = Math.PI;
 
+    // Paths are generated at startup and sampled at this period for O(1) lookups while following them
+    public static final double PATH_SAMPLE_PERIOD_SECONDS = 0.02;
+
+    // Where the drive to pose assist goes, e.g. in front of a scoring station
+    public static final Pose2d ASSIST_TARGET_POSE = new Pose2d(1.8, 4.4, Rotation2d.fromDegrees(180));
+    // The assist only plans again when its target moves further than this, so a noisy target doesn't replan every cycle
+    public static final double REPLAN_TRANSLATION_TOLERANCE = 0.1; // meters
+    public static final double REPLAN_ROTATION_TOLERANCE = Units.degreesToRadians(5);
+
     public static final double PX_CONTROLLER = 1;
     public static final double PY_CONTROLLER = 1;
     public static final double P_THETA_CONTROLLER = 1;
@@ -150,6 +236,120 @@ public final class Constants {
             MAX_ANGULAR_SPEED_RADIANS_PER_SECOND, MAX_ANGULAR_SPEED_RADIANS_PER_SECOND_SQUARED);
   }
 
+  public static final class VisionConstants {
+    // How much to trust each source, as standard deviations of x (meters), y (meters) and heading (radians).
+    // Smaller values mean more trust.
+    public static final Matrix<N3, N1> STATE_STD_DEVS = VecBuilder.fill(0.05, 0.05, Units.degreesToRadians(0.5));
+    public static final Matrix<N3, N1> VISION_STD_DEVS = VecBuilder.fill(0.5, 0.5, Units.degreesToRadians(10));
+    // Used right after a collision, when the wheels have likely slipped and vision is the better source
+    public static final Matrix<N3, N1> COLLISION_VISION_STD_DEVS = VecBuilder.fill(0.2, 0.2, Units.degreesToRadians(10));
+    // Measurements further than this from the current estimate are rejected as outliers, e.g. a misidentified tag.
+    // This leaves room for how far the robot can move during the camera latency.
+    public static final double MAX_VISION_TRANSLATION_ERROR = 1.0; // meters
+    public static final double MAX_VISION_ROTATION_ERROR = Units.degreesToRadians(30);
+
+    // The synthetic vision source used in simulation
+    public static final double SIM_PERIOD_SECONDS = 0.1; // 10 Hz, like a typical AprilTag pipeline
+    public static final double SIM_LATENCY_SECONDS = 0.08;
+    public static final double SIM_TRANSLATION_NOISE_METERS = 0.05;
+    public static final double SIM_ROTATION_NOISE_RADIANS = Units.degreesToRadians(2);
+  }
+
+  public static final class CharacterizationConstants {
+    public static final double QUASISTATIC_RAMP_RATE = 1.0; // volts per second
+    public static final double QUASISTATIC_TIMEOUT = 4.0; // seconds
+    public static final double DYNAMIC_STEP_VOLTAGE = 6.0; // volts
+    public static final double DYNAMIC_TIMEOUT = 1.5; // seconds
+    // Time to let the wheels point forward and the robot settle between tests
+    public static final double SETTLE_TIME = 1.0; // seconds
+    // Samples slower than this are below the static friction breakaway, and left out of the fit
+    public static final double MIN_VELOCITY = 0.05; // meters per second
+
+    public static final double WHEEL_RADIUS_ROTATION_SPEED = 0.25; // percent of max angular speed
+    public static final double WHEEL_RADIUS_TIMEOUT = 8.0; // seconds
+
+    // Written to the roboRIO's operating directory, ready to paste into ModuleConstants
+    public static final String OUTPUT_FILE = "DriveCharacterization.txt";
+  }
+
+  public static final class TelemetryConstants {
+    // How often each group of motor signals is read and published, in robot loop cycles (20 ms each).
+    public static final int DEBUG_OUTPUT_PERIOD_CYCLES = 1; // 50 Hz
+    public static final int MATCH_OUTPUT_PERIOD_CYCLES = 5; // 10 Hz
+    public static final int TEMPERATURE_PERIOD_CYCLES = 50; // 1 Hz
+  }
+
+  public static final class GyroConstants {
+    // The navX's update rate over SPI, and how often it's sampled. 200 Hz is the most it supports.
+    public static final int UPDATE_RATE_HZ = 200;
+    // How far back headings can be interpolated
+    public static final double HISTORY_SECONDS = 1.0;
+    // A change in linear acceleration faster than this is a collision
+    public static final double COLLISION_JERK_THRESHOLD = 40.0; // g per second
+    // How long odometry is flagged after a collision
+    public static final double COLLISION_HOLD_TIME = 0.5; // seconds
+    // How fast the navX's clock may drift from the FPGA's, so the mapping between them can follow it
+    public static final double CLOCK_DRIFT_RATE = 1e-4; // seconds per second
+  }
+
+  public static final class TractionConstants {
+    // A wheel moving this much faster or slower than the other modules and the gyro say it should is slipping
+    public static final double SLIP_THRESHOLD = 0.4; // meters per second
+    public static final double SLIP_HOLD_TIME = 0.1; // seconds
+    // Whether slipping wheels are held to just above their speed over the ground until they grip again
+    public static final boolean TRACTION_CONTROL = true;
+    public static final double TRACTION_MARGIN = 0.25; // meters per second
+  }
+
+  public static final class HealthConstants {
+    // An encoder that doesn't change for this long while its motor is commanded is considered disconnected
+    public static final double STALE_ENCODER_TIME = 0.5; // seconds
+    public static final double STALE_SPEED_THRESHOLD = 0.3; // meters per second
+    public static final double STALE_ANGLE_THRESHOLD = 0.2; // radians
+    // A stale encoder only fails its module with a disconnect signature: the motor drawing less than this, a CAN
+    // error, or (for the ThroughBore) the turning motor spinning faster than this while the encoder doesn't move.
+    // Otherwise the wheel is just stalled, e.g. pushing another robot, and only a warning is raised.
+    public static final double DISCONNECT_CURRENT = 2.0; // amps
+    public static final double TURNING_MOTOR_MOVING_RPM = 300.0;
+    // Consecutive CAN errors from a controller before it's considered lost. Each controller is checked once every
+    // 8 cycles, so this is ~0.5 seconds.
+    public static final int CAN_ERROR_CHECKS = 3;
+    public static final double MAX_TEMPERATURE = 80.0; // celsius
+    // Running near the smart current limit for this long usually means a stall or a bind
+    public static final double SUSTAINED_CURRENT_FRACTION = 0.9; // of the smart current limit
+    public static final double SUSTAINED_CURRENT_TIME = 2.0; // seconds
+    // Whether a failed module is disabled automatically, leaving the drivetrain on the other three
+    public static final boolean AUTO_DEGRADE = true;
+  }
+
+  public static final class PowerConstants {
+    // Limiting starts when the filtered battery voltage drops below the start voltage, and is at its strongest by
+    // the floor voltage, with some margin above the roboRIO's 6.8 V brownout.
+    public static final double LIMIT_START_VOLTAGE = 9.0; // volts
+    public static final double LIMIT_FLOOR_VOLTAGE = 7.5; // volts
+    public static final double VOLTAGE_FILTER_TIME_CONSTANT = 0.1; // seconds
+    // What all eight drivetrain motors together may draw before they're limited
+    public static final double DRIVETRAIN_CURRENT_BUDGET = 200.0; // amps
+    public static final int MIN_DRIVING_CURRENT_LIMIT = 25; // amps
+    public static final double MIN_SPEED_SCALE = 0.5;
+    // Limiting kicks in immediately, but lets off at this rate, so it doesn't oscillate
+    public static final double RECOVERY_RATE = 0.5; // per second
+    // Changing a current limit is a CAN round trip per controller, so it's only done in steps, and not too often
+    public static final int CURRENT_LIMIT_STEP = 5; // amps
+    public static final double CURRENT_LIMIT_UPDATE_PERIOD = 0.25; // seconds
+  }
+
+  public static final class SimConstants {
+    public static final double ROBOT_MASS_KG = 50.0;
+    public static final double WHEEL_COEFFICIENT_OF_FRICTION = 1.1;
+    // Rotational inertia of the wheel and drive gearing alone, used once the wheel breaks traction
+    public static final double WHEEL_MOI_KG_METERS_SQUARED = 0.0005;
+    // Rotational inertia of the turning gearbox output and module
+    public static final double TURNING_MOI_KG_METERS_SQUARED = 0.004;
+    // Sub-steps per robot loop, to keep the slip model stable
+    public static final int PHYSICS_SUBSTEPS = 10;
+  }
+
   public static final class NeoMotorConstants {
     public static final double FREE_SPEED_RPM = 5676;
   }
@@ -4,10 +4,12 @@
 
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.robot.commands.SwerveDriveCommand;
+import frc.utils.LoopProfiler;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -17,6 +19,11 @@ import frc.robot.commands.SwerveDriveCommand;
  */
 public class Robot extends TimedRobot {
   private RobotContainer container;
+  private Command autonomousCommand;
+
+  private final LoopProfiler.Stage schedulerStage = LoopProfiler.stage("CommandScheduler.run()");
+  // Everything IterativeRobotBase does after robotPeriodic(), i.e. SmartDashboard, LiveWindow and Shuffleboard updates.
+  private final LoopProfiler.Stage dashboardStage = LoopProfiler.stage("Dashboard Publish");
 
   /**
    * This function is run when the robot is first started up and should be used for any
@@ -24,9 +31,20 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotInit() {
+    // Start recording to the data log, on a USB stick if there's one plugged in.
+    DataLogManager.start();
+
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     container = new RobotContainer();
+    LoopProfiler.profileCommands(CommandScheduler.getInstance());
+  }
+
+  @Override protected void loopFunc() {
+    LoopProfiler.startCycle();
+    super.loopFunc();
+    dashboardStage.stop();
+    LoopProfiler.endCycle(getPeriod());
   }
 
   /**
@@ -42,7 +60,10 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    schedulerStage.start();
     CommandScheduler.getInstance().run();
+    schedulerStage.stop();
+    dashboardStage.start();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -55,19 +76,10 @@ public class Robot extends TimedRobot {
   /** This autonomous runs the autonomous command selected by your {@link RobotContainer} class. */
   @Override
   public void autonomousInit() {
-//    m_autonomousCommand = container.getAutonomousCommand();
-//
-//    /*
-//     * String autoSelected = SmartDashboard.getString("Auto Selector",
-//     * "Default"); switch(autoSelected) { case "My Auto": autonomousCommand
-//     * = new MyAutoCommand(); break; case "Default Auto": default:
-//     * autonomousCommand = new ExampleCommand(); break; }
-//     */
-//
-//    // schedule the autonomous command (example)
-//    if (m_autonomousCommand != null) {
-//      m_autonomousCommand.schedule();
-//    }
+    autonomousCommand = container.getAutonomousCommand();
+    if (autonomousCommand != null) {
+      autonomousCommand.schedule();
+    }
   }
 
   /** This function is called periodically during autonomous. */
@@ -76,6 +88,10 @@ public class Robot extends TimedRobot {
 
   @Override
   public void teleopInit() {
+    // Make sure the autonomous command stops running when teleop starts.
+    if (autonomousCommand != null) {
+      autonomousCommand.cancel();
+    }
     container.drive.setDefaultCommand(new SwerveDriveCommand(container.driverController, container.drive));
   }
 
@@ -1,68 +1,86 @@
 package frc.robot;
 
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import frc.robot.Constants.AutoConstants;
 import frc.robot.Constants.IOConstants;
+import frc.robot.auto.AsyncPathPlanner;
+import frc.robot.auto.PathCache;
+import frc.robot.auto.SampledPath;
+import frc.robot.commands.DriveCharacterization;
+import frc.robot.commands.DriveToPoseCommand;
+import frc.robot.commands.FollowPathCommand;
+import frc.robot.subsystems.DriveHealthMonitor;
+import frc.robot.subsystems.DriveLogger;
+import frc.robot.subsystems.PowerManager;
 import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.SimulatedVision;
+import frc.robot.subsystems.TelemetrySubsystem;
 import frc.shuffleboard.GlobalTab;
 import frc.shuffleboard.ShuffleboardSpeed;
 
 public class RobotContainer {
   protected final DriveSubsystem drive = new DriveSubsystem();
+  protected final TelemetrySubsystem telemetry = new TelemetrySubsystem(drive.getModules());
+  protected final DriveLogger driveLogger = new DriveLogger(drive);
+  protected final DriveHealthMonitor healthMonitor = new DriveHealthMonitor(drive);
+  protected final PowerManager powerManager = new PowerManager(drive);
   protected final CommandXboxController driverController = new CommandXboxController(IOConstants.DRIVER_CONTROLLER_PORT);
   public static final ShuffleboardSpeed SPEED_MULT = new ShuffleboardSpeed(GlobalTab.MATCH, "Speed MUlt", 0.8);
 
+  // Every path is generated once here, at robot startup, rather than when autonomous starts.
+  private final PathCache paths = new PathCache();
+  private final SendableChooser<Command> autoChooser = new SendableChooser<>();
+  private final AsyncPathPlanner planner = new AsyncPathPlanner();
+  private final DriveCharacterization characterization = new DriveCharacterization(drive);
+
   public RobotContainer() {
+    if (RobotBase.isSimulation()) {
+      new SimulatedVision(drive);
+    }
     configureButtonBindings();
+    configureAutos();
+
+    GlobalTab.DEBUG.add("Characterize Drive Feedforward", characterization.feedforward());
+    GlobalTab.DEBUG.add("Characterize Wheel Radius", characterization.wheelRadius());
   }
 
   private void configureButtonBindings() {
     driverController.a().onTrue(new RunCommand(drive::zeroHeading, drive));
+    driverController.b().whileTrue(new DriveToPoseCommand(drive, planner, () -> AutoConstants.ASSIST_TARGET_POSE));
+    // Doesn't require the drive, so it toggles without interrupting the drive command.
+    driverController.x().onTrue(new InstantCommand(() -> drive.setHeadingHold(!drive.isHeadingHoldEnabled())));
+  }
+
+  private void configureAutos() {
+    autoChooser.setDefaultOption("None", new InstantCommand());
+    for (final String name : paths.getNames()) {
+      autoChooser.addOption(name, followPath(paths.get(name)));
+    }
+    GlobalTab.MATCH.add("Auto", autoChooser);
   }
 
-//  /**
-//   * Use this to pass the autonomous command to the main {@link Robot} class.
-//   *
-//   * @return the command to run in autonomous
-//   */
-//  public Command getAutonomousCommand() {
-//    // Create config for trajectory
-//    TrajectoryConfig config = new TrajectoryConfig(
-//            AutoConstants.MAX_SPEED_METERS_PER_SECOND,
-//            AutoConstants.MAX_ACCELERATION_METERS_PER_SECOND_SQUARED)
-//            // Add kinematics to ensure max speed is actually obeyed
-//            .setKinematics(DriveConstants.DRIVE_KINEMATICS);
-//
-//    // An example trajectory to follow. All units in meters.
-//    Trajectory exampleTrajectory = TrajectoryGenerator.generateTrajectory(
-//            // Start at the origin facing the +X direction
-//            new Pose2d(0, 0, new Rotation2d(0)),
-//            // Pass through these two interior waypoints, making an 's' curve path
-//            List.of(new Translation2d(1, 1), new Translation2d(2, -1)),
-//            // End 3 meters straight ahead of where we started, facing forward
-//            new Pose2d(3, 0, new Rotation2d(0)),
-//            config);
-//
-//    var thetaController = new ProfiledPIDController(
-//            AutoConstants.P_THETA_CONTROLLER, 0, 0, AutoConstants.THETA_CONTROLLER_CONSTRAINTS);
-//    thetaController.enableContinuousInput(-Math.PI, Math.PI);
-//
-//    SwerveControllerCommand swerveControllerCommand = new SwerveControllerCommand(
-//            exampleTrajectory,
-//            robotDrive::getPose, // Functional interface to feed supplier
-//            DriveConstants.DRIVE_KINEMATICS,
-//
-//            // Position controllers
-//            new PIDController(AutoConstants.PX_CONTROLLER, 0, 0),
-//            new PIDController(AutoConstants.PY_CONTROLLER, 0, 0),
-//            thetaController,
-//            robotDrive::setModuleStates,
-//            robotDrive);
-//
-//    // Reset odometry to the starting pose of the trajectory.
-//    robotDrive.resetOdometry(exampleTrajectory.getInitialPose());
-//
-//    // Run path following command, then stop at the end.
-//    return swerveControllerCommand.andThen(() -> robotDrive.drive(0, 0, 0, false, false));
-//  }
+  /**
+   * Creates a command that resets the odometry to the start of the path, then follows it.
+   *
+   * @param path The path to follow.
+   * @return The command.
+   */
+  private Command followPath(SampledPath path) {
+    return new InstantCommand(() -> drive.resetOdometry(path.getInitialPose()), drive)
+            .andThen(new FollowPathCommand(drive, path));
+  }
+
+  /**
+   * Use this to pass the autonomous command to the main {@link Robot} class.
+   *
+   * @return the command to run in autonomous
+   */
+  public Command getAutonomousCommand() {
+    return autoChooser.getSelected();
+  }
 }
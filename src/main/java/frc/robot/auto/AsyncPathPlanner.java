@@ -0,0 +1,144 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.DriveConstants;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates holonomic paths between two poses on a background thread, so the robot loop never waits on trajectory
+ * generation. The finished path is handed back through an atomic reference, which the requester polls for.
+ *
+ * <p>Only the newest request matters: starting a new one (or calling {@link #cancel()}) makes every older request
+ * stale, and a stale request is either skipped before it's generated or its result is thrown away.
+ */
+public class AsyncPathPlanner {
+  // Below this distance, the robot only turns in place
+  private static final double MIN_TRANSLATION_METERS = 0.02;
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    final var thread = new Thread(runnable, "Path Planner");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicLong latestRequest = new AtomicLong();
+  private final AtomicReference<Result> result = new AtomicReference<>();
+
+  /**
+   * Requests a path from the start pose to the target pose, making any previous request stale.
+   *
+   * @param start  The pose to start from, e.g. {@link frc.robot.subsystems.DriveSubsystem#getPose()}.
+   * @param target The pose to end at.
+   * @return The id of the request, to {@link #poll(long)} for the result with.
+   */
+  public long request(Pose2d start, Pose2d target) {
+    final long id = latestRequest.incrementAndGet();
+    executor.execute(() -> {
+      if (latestRequest.get() != id) {
+        return;
+      }
+
+      final SampledPath path;
+      try {
+        path = generate(start, target);
+      } catch (RuntimeException e) {
+        DriverStation.reportError("Failed to generate path: " + e.getMessage(), e.getStackTrace());
+        if (latestRequest.get() == id) {
+          result.set(new Result(id, null));
+        }
+        return;
+      }
+
+      if (latestRequest.get() == id) {
+        result.set(new Result(id, path));
+      }
+    });
+    return id;
+  }
+
+  /** Makes every outstanding request stale. */
+  public void cancel() {
+    latestRequest.incrementAndGet();
+    result.set(null);
+  }
+
+  /**
+   * Takes the result of a request, if it's done. This never blocks.
+   *
+   * @param id The id returned by {@link #request(Pose2d, Pose2d)}.
+   * @return The path, or null if it isn't ready yet, failed, or the request is stale.
+   */
+  public SampledPath poll(long id) {
+    final Result current = result.get();
+    if (current != null && current.id == id && current.path != null && result.compareAndSet(current, null)) {
+      return current.path;
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether a request failed to generate a path. The failure itself is reported to the driver station.
+   *
+   * @param id The id returned by {@link #request(Pose2d, Pose2d)}.
+   * @return True if generating the path threw, false if it's still pending, succeeded, or the request is stale.
+   */
+  public boolean hasFailed(long id) {
+    final Result current = result.get();
+    return current != null && current.id == id && current.path == null;
+  }
+
+  /**
+   * Generates a straight path from the start pose to the target pose, turning from the start heading to the target
+   * heading along the way.
+   */
+  static SampledPath generate(Pose2d start, Pose2d target) {
+    final var builder = new SampledPath.Builder(AutoConstants.PATH_SAMPLE_PERIOD_SECONDS);
+    final double[] angles = {start.getRotation().getRadians(), target.getRotation().getRadians()};
+    final var translation = target.getTranslation().minus(start.getTranslation());
+
+    final Trajectory trajectory;
+    if (translation.getNorm() < MIN_TRANSLATION_METERS) {
+      // Nothing to drive, so just give the heading controller time to turn.
+      final double turnTime = Math.max(AutoConstants.PATH_SAMPLE_PERIOD_SECONDS,
+              Math.abs(target.getRotation().minus(start.getRotation()).getRadians())
+                      / AutoConstants.MAX_ANGULAR_SPEED_RADIANS_PER_SECOND);
+      final var pose = new Pose2d(start.getTranslation(), new Rotation2d());
+      trajectory = new Trajectory(List.of(
+              new Trajectory.State(0, 0, 0, pose, 0),
+              new Trajectory.State(turnTime, 0, 0, pose, 0)));
+    } else {
+      final var direction = translation.getAngle();
+      trajectory = TrajectoryGenerator.generateTrajectory(
+              new Pose2d(start.getTranslation(), direction),
+              List.of(),
+              new Pose2d(target.getTranslation(), direction),
+              new TrajectoryConfig(
+                      AutoConstants.MAX_SPEED_METERS_PER_SECOND,
+                      AutoConstants.MAX_ACCELERATION_METERS_PER_SECOND_SQUARED)
+                      .setKinematics(DriveConstants.DRIVE_KINEMATICS));
+    }
+
+    return builder.addSegment(trajectory, new double[] {0, trajectory.getTotalTimeSeconds()}, angles).build();
+  }
+
+  private static class Result {
+    private final long id;
+    // Null if generation failed
+    private final SampledPath path;
+
+    private Result(long id, SampledPath path) {
+      this.id = id;
+      this.path = path;
+    }
+  }
+}
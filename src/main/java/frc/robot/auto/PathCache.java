@@ -0,0 +1,168 @@
+package frc.robot.auto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.spline.Spline;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.DriveConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Loads every PathPlanner path in the deploy directory, generates its trajectory and samples it into a
+ * {@link SampledPath} once, at startup, so autonomous never waits on trajectory generation.
+ *
+ * <p>Each path is split into segments at its reversal points, where the robot stops and drives back out the way it
+ * came. Within a segment, the Bezier control points become spline tangents, and the holonomic heading is interpolated
+ * between waypoints. Velocity overrides, stop events and markers are ignored.
+ */
+public class PathCache {
+  private static final String PATH_DIRECTORY = "pathplanner";
+  private static final String PATH_EXTENSION = ".path";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Map<String, SampledPath> paths = new TreeMap<>();
+
+  /** Loads the paths from the deploy directory. */
+  public PathCache() {
+    this(new File(Filesystem.getDeployDirectory(), PATH_DIRECTORY));
+  }
+
+  /**
+   * Loads the paths from the given directory. Paths that fail to load are reported to the Driver Station and skipped.
+   *
+   * @param directory The directory containing the .path files.
+   */
+  public PathCache(File directory) {
+    final long start = System.nanoTime();
+    final File[] files = directory.listFiles((dir, name) -> name.endsWith(PATH_EXTENSION));
+    if (files == null) {
+      DriverStation.reportWarning("No path directory at " + directory, false);
+      return;
+    }
+
+    for (final File file : files) {
+      final String name = file.getName().substring(0, file.getName().length() - PATH_EXTENSION.length());
+      try {
+        paths.put(name, load(file));
+      } catch (IOException | RuntimeException e) {
+        DriverStation.reportError("Failed to load path " + file.getName() + ": " + e.getMessage(), e.getStackTrace());
+      }
+    }
+
+    DataLogManager.log(String.format("Generated %d paths in %.1f ms", paths.size(), (System.nanoTime() - start) / 1e6));
+  }
+
+  /**
+   * @return The names of the loaded paths, in alphabetical order.
+   */
+  public Set<String> getNames() {
+    return Collections.unmodifiableSet(paths.keySet());
+  }
+
+  /**
+   * @param name The name of the path, i.e. its file name without the extension.
+   * @return The sampled path, or null if there's no path with that name.
+   */
+  public SampledPath get(String name) {
+    return paths.get(name);
+  }
+
+  /**
+   * Generates and samples a PathPlanner path file.
+   *
+   * @param file The .path file.
+   * @return The sampled path.
+   * @throws IOException If the file can't be read or parsed.
+   */
+  public static SampledPath load(File file) throws IOException {
+    final JsonNode waypoints = MAPPER.readTree(file).path("waypoints");
+    if (waypoints.size() < 2) {
+      throw new IllegalArgumentException("A path needs at least two waypoints");
+    }
+
+    final var config = new TrajectoryConfig(
+            AutoConstants.MAX_SPEED_METERS_PER_SECOND,
+            AutoConstants.MAX_ACCELERATION_METERS_PER_SECOND_SQUARED)
+            // Add kinematics to ensure max speed is actually obeyed
+            .setKinematics(DriveConstants.DRIVE_KINEMATICS);
+    final var builder = new SampledPath.Builder(AutoConstants.PATH_SAMPLE_PERIOD_SECONDS);
+
+    int segmentStart = 0;
+    for (int i = 1; i < waypoints.size(); i++) {
+      if (i == waypoints.size() - 1 || waypoints.get(i).path("isReversal").asBoolean()) {
+        addSegment(builder, waypoints, segmentStart, i, config);
+        segmentStart = i;
+      }
+    }
+    return builder.build();
+  }
+
+  private static void addSegment(SampledPath.Builder builder, JsonNode waypoints, int from, int to,
+                                 TrajectoryConfig config) {
+    final var controlVectors = new TrajectoryGenerator.ControlVectorList();
+    final var anchors = new Translation2d[to - from + 1];
+    final double[] angles = new double[to - from + 1];
+    for (int i = from; i <= to; i++) {
+      final JsonNode waypoint = waypoints.get(i);
+      final Translation2d anchor = readPoint(waypoint.path("anchorPoint"));
+      // A cubic Bezier's derivative at an end is 3x the vector to its neighbouring control point. The last waypoint
+      // of a segment uses its incoming control, every other waypoint its outgoing one.
+      final Translation2d tangent = i == to
+              ? anchor.minus(readPoint(waypoint.path("prevControl"))).times(3)
+              : readPoint(waypoint.path("nextControl")).minus(anchor).times(3);
+
+      controlVectors.add(new Spline.ControlVector(
+              new double[] {anchor.getX(), tangent.getX(), 0},
+              new double[] {anchor.getY(), tangent.getY(), 0}));
+      anchors[i - from] = anchor;
+      angles[i - from] = Math.toRadians(waypoint.path("holonomicAngle").asDouble());
+    }
+
+    final Trajectory trajectory = TrajectoryGenerator.generateTrajectory(controlVectors, config);
+    builder.addSegment(trajectory, findWaypointTimes(trajectory, anchors), angles);
+  }
+
+  /**
+   * Finds when the trajectory passes closest to each anchor point, searching forward from the previous one.
+   */
+  private static double[] findWaypointTimes(Trajectory trajectory, Translation2d[] anchors) {
+    final var states = trajectory.getStates();
+    final double[] times = new double[anchors.length];
+    times[anchors.length - 1] = trajectory.getTotalTimeSeconds();
+
+    int state = 0;
+    for (int i = 1; i < anchors.length - 1; i++) {
+      double closest = Double.POSITIVE_INFINITY;
+      for (int j = state; j < states.size(); j++) {
+        final double distance = states.get(j).poseMeters.getTranslation().getDistance(anchors[i]);
+        if (distance > closest) {
+          break;
+        }
+        closest = distance;
+        state = j;
+      }
+      times[i] = states.get(state).timeSeconds;
+    }
+    return times;
+  }
+
+  private static Translation2d readPoint(JsonNode point) {
+    if (!point.isObject()) {
+      throw new IllegalArgumentException("Missing control point");
+    }
+    return new Translation2d(point.path("x").asDouble(), point.path("y").asDouble());
+  }
+}
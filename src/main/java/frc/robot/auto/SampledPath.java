@@ -0,0 +1,153 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+
+import java.util.Arrays;
+
+/**
+ * A holonomic trajectory sampled at a fixed period into primitive arrays. Since the samples are evenly spaced in time,
+ * {@link #sample(double, Sample)} looks up the two samples around a time directly instead of searching for them, and
+ * doesn't allocate.
+ */
+public class SampledPath {
+  private final double periodSeconds;
+  private final double[] x;
+  private final double[] y;
+  private final double[] vx;
+  private final double[] vy;
+  private final double[] heading;
+
+  private SampledPath(double periodSeconds, double[] x, double[] y, double[] vx, double[] vy, double[] heading) {
+    this.periodSeconds = periodSeconds;
+    this.x = x;
+    this.y = y;
+    this.vx = vx;
+    this.vy = vy;
+    this.heading = heading;
+  }
+
+  /**
+   * @return The time it takes to drive the whole path, in seconds.
+   */
+  public double getTotalTimeSeconds() {
+    return (x.length - 1) * periodSeconds;
+  }
+
+  /**
+   * @return The pose the robot starts the path at, facing its holonomic heading.
+   */
+  public Pose2d getInitialPose() {
+    return new Pose2d(x[0], y[0], new Rotation2d(heading[0]));
+  }
+
+  /**
+   * Linearly interpolates the path at the given time. Times outside the path are clamped to its ends.
+   *
+   * @param timeSeconds The time since the start of the path, in seconds.
+   * @param sample      The sample to fill.
+   */
+  public void sample(double timeSeconds, Sample sample) {
+    final double index = MathUtil.clamp(timeSeconds / periodSeconds, 0, x.length - 1);
+    final int i = Math.min((int) index, x.length - 2);
+    final double t = index - i;
+
+    sample.x = MathUtil.interpolate(x[i], x[i + 1], t);
+    sample.y = MathUtil.interpolate(y[i], y[i + 1], t);
+    sample.vx = MathUtil.interpolate(vx[i], vx[i + 1], t);
+    sample.vy = MathUtil.interpolate(vy[i], vy[i + 1], t);
+    sample.heading = MathUtil.angleModulus(heading[i] + MathUtil.angleModulus(heading[i + 1] - heading[i]) * t);
+  }
+
+  /** A field-relative path setpoint. */
+  public static class Sample {
+    /** Position, in meters. */
+    public double x;
+    public double y;
+    /** Velocity, in meters per second. */
+    public double vx;
+    public double vy;
+    /** Holonomic heading, in radians. */
+    public double heading;
+  }
+
+  /**
+   * Samples trajectory segments, one after another, into a {@link SampledPath}.
+   */
+  public static class Builder {
+    private final double periodSeconds;
+    private double[] x = new double[256];
+    private double[] y = new double[256];
+    private double[] vx = new double[256];
+    private double[] vy = new double[256];
+    private double[] heading = new double[256];
+    private int size = 0;
+
+    /**
+     * @param periodSeconds The time between samples, in seconds.
+     */
+    public Builder(double periodSeconds) {
+      this.periodSeconds = periodSeconds;
+    }
+
+    /**
+     * Appends a segment. Consecutive segments are expected to meet, so the first sample of every segment after the
+     * first is dropped.
+     *
+     * @param trajectory     The segment's trajectory. Its pose rotation is the direction of travel.
+     * @param waypointTimes  The times the segment passes through its waypoints, in seconds, in increasing order.
+     * @param waypointAngles The holonomic headings at those waypoints, in radians. The heading is interpolated along
+     *                       the shortest direction between them.
+     */
+    public Builder addSegment(Trajectory trajectory, double[] waypointTimes, double[] waypointAngles) {
+      final int samples = (int) Math.ceil(trajectory.getTotalTimeSeconds() / periodSeconds) + 1;
+      int waypoint = 0;
+      for (int i = size == 0 ? 0 : 1; i < samples; i++) {
+        final double time = i * periodSeconds;
+        final Trajectory.State state = trajectory.sample(time);
+
+        while (waypoint < waypointTimes.length - 2 && time >= waypointTimes[waypoint + 1]) {
+          waypoint++;
+        }
+        final double span = waypointTimes[waypoint + 1] - waypointTimes[waypoint];
+        final double progress = span > 0 ? MathUtil.clamp((time - waypointTimes[waypoint]) / span, 0, 1) : 1;
+
+        ensureCapacity(size + 1);
+        final Rotation2d direction = state.poseMeters.getRotation();
+        x[size] = state.poseMeters.getX();
+        y[size] = state.poseMeters.getY();
+        vx[size] = state.velocityMetersPerSecond * direction.getCos();
+        vy[size] = state.velocityMetersPerSecond * direction.getSin();
+        heading[size] = MathUtil.angleModulus(waypointAngles[waypoint]
+                + MathUtil.angleModulus(waypointAngles[waypoint + 1] - waypointAngles[waypoint]) * progress);
+        size++;
+      }
+      return this;
+    }
+
+    public SampledPath build() {
+      if (size < 2) {
+        throw new IllegalStateException("A path needs at least two samples");
+      }
+      return new SampledPath(periodSeconds,
+              Arrays.copyOf(x, size),
+              Arrays.copyOf(y, size),
+              Arrays.copyOf(vx, size),
+              Arrays.copyOf(vy, size),
+              Arrays.copyOf(heading, size));
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > x.length) {
+        final int newLength = Math.max(capacity, x.length * 2);
+        x = Arrays.copyOf(x, newLength);
+        y = Arrays.copyOf(y, newLength);
+        vx = Arrays.copyOf(vx, newLength);
+        vy = Arrays.copyOf(vy, newLength);
+        heading = Arrays.copyOf(heading, newLength);
+      }
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package frc.robot.commands;
+
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.Constants.CharacterizationConstants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.ModuleConstants.StatusFrameProfile;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.MAXSwerveModule;
+import frc.utils.FeedforwardFit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * Characterizes the drivetrain, so the example gains in {@link ModuleConstants} can be replaced with measured ones.
+ * <ul>
+ *   <li>{@link #feedforward()} runs quasistatic voltage ramps and dynamic voltage steps in both directions with the
+ *   wheels pointed forward, and fits kS, kV and kA to them.</li>
+ *   <li>{@link #wheelRadius()} spins the robot in place and compares how far the gyro turned with how far the wheels
+ *   rolled, which measures the wheel radius as worn and compressed on the carpet.</li>
+ * </ul>
+ * Results are written to {@link CharacterizationConstants#OUTPUT_FILE} as constants ready to paste in. Every sample
+ * is also logged to "/Characterization/Drive" as [time, volts, velocity, acceleration], so the fit can be checked or
+ * redone offline from the CSV export.
+ *
+ * <p>These drive the robot across the floor, so give it a few meters of space in front and behind.
+ */
+public class DriveCharacterization {
+  private final DriveSubsystem drive;
+  private final MAXSwerveModule[] modules;
+  private final MAXSwerveModule.SensorSnapshot sensors = new MAXSwerveModule.SensorSnapshot();
+  private final FeedforwardFit fit = new FeedforwardFit();
+  private final DoubleArrayLogEntry logEntry;
+  private final double[] logRecord = new double[4];
+
+  private double wheelDiameterMeters = Double.NaN;
+
+  public DriveCharacterization(DriveSubsystem drive) {
+    this.drive = drive;
+    this.modules = drive.getModules();
+    this.logEntry = new DoubleArrayLogEntry(DataLogManager.getLog(), "/Characterization/Drive");
+  }
+
+  /**
+   * @return A command that characterizes the driving motor feedforward.
+   */
+  public Command feedforward() {
+    return Commands.sequence(
+                    Commands.runOnce(() -> {
+                      fit.reset();
+                      drive.setStatusFrameProfile(StatusFrameProfile.CHARACTERIZATION);
+                    }, drive),
+                    settle(),
+                    new VoltageTest(CharacterizationConstants.QUASISTATIC_RAMP_RATE, 0,
+                            CharacterizationConstants.QUASISTATIC_TIMEOUT, 1),
+                    settle(),
+                    new VoltageTest(CharacterizationConstants.QUASISTATIC_RAMP_RATE, 0,
+                            CharacterizationConstants.QUASISTATIC_TIMEOUT, -1),
+                    settle(),
+                    new VoltageTest(0, CharacterizationConstants.DYNAMIC_STEP_VOLTAGE,
+                            CharacterizationConstants.DYNAMIC_TIMEOUT, 1),
+                    settle(),
+                    new VoltageTest(0, CharacterizationConstants.DYNAMIC_STEP_VOLTAGE,
+                            CharacterizationConstants.DYNAMIC_TIMEOUT, -1),
+                    Commands.runOnce(this::finishFeedforward))
+            .finallyDo(interrupted -> {
+              drive.runCharacterization(0);
+              drive.setStatusFrameProfile(ModuleConstants.DEFAULT_STATUS_FRAME_PROFILE);
+            });
+  }
+
+  /**
+   * @return A command that measures the effective wheel diameter.
+   */
+  public Command wheelRadius() {
+    final double[] startPositions = new double[modules.length];
+    final double[] startHeading = new double[1];
+    return Commands.sequence(
+                    // Point the wheels along the circle they'll drive around before measuring.
+                    Commands.run(() -> drive.setAngleDegrees(-45), drive)
+                            .withTimeout(CharacterizationConstants.SETTLE_TIME),
+                    Commands.runOnce(() -> {
+                      readPositions(startPositions);
+                      startHeading[0] = drive.getContinuousHeadingRadians();
+                    }),
+                    Commands.run(() -> drive.drive(
+                                    0, 0, CharacterizationConstants.WHEEL_RADIUS_ROTATION_SPEED, false, false), drive)
+                            .withTimeout(CharacterizationConstants.WHEEL_RADIUS_TIMEOUT),
+                    Commands.runOnce(() -> finishWheelRadius(startPositions, startHeading[0])))
+            .finallyDo(interrupted -> drive.drive(0, 0, 0, false, false));
+  }
+
+  private Command settle() {
+    return Commands.run(() -> drive.runCharacterization(0), drive)
+            .withTimeout(CharacterizationConstants.SETTLE_TIME);
+  }
+
+  private double readVelocity() {
+    double total = 0.0;
+    for (final var module : modules) {
+      module.getSensors(sensors);
+      total += sensors.drivingVelocityMetersPerSecond;
+    }
+    return total / modules.length;
+  }
+
+  private void readPositions(double[] positions) {
+    for (int i = 0; i < modules.length; i++) {
+      modules[i].getSensors(sensors);
+      positions[i] = sensors.drivingPositionMeters;
+    }
+  }
+
+  private void finishFeedforward() {
+    if (!fit.solve()) {
+      DriverStation.reportWarning("Drive feedforward characterization didn't collect enough data to fit", false);
+      return;
+    }
+    DataLogManager.log(String.format("Drive feedforward: kS = %.4f, kV = %.4f, kA = %.4f (r^2 = %.4f, %d samples)",
+            fit.getKs(), fit.getKv(), fit.getKa(), fit.getRSquared(), fit.getSampleCount()));
+    writeConstants();
+  }
+
+  private void finishWheelRadius(double[] startPositions, double startHeading) {
+    final double[] endPositions = new double[modules.length];
+    readPositions(endPositions);
+
+    double wheelDistance = 0.0;
+    for (int i = 0; i < modules.length; i++) {
+      wheelDistance += Math.abs(endPositions[i] - startPositions[i]);
+    }
+    wheelDistance /= modules.length;
+
+    final double robotRotation = Math.abs(drive.getContinuousHeadingRadians() - startHeading);
+    if (wheelDistance <= 0 || robotRotation <= 0) {
+      DriverStation.reportWarning("Wheel radius characterization didn't see the robot turn", false);
+      return;
+    }
+
+    // The wheels should have rolled the arc the modules swept. The encoder distance assumes the nominal diameter, so
+    // scale it by how much further or shorter that arc actually was.
+    final double arcLength = robotRotation * DriveConstants.MODULE_LOCATIONS[0].getNorm();
+    wheelDiameterMeters = ModuleConstants.WHEEL_DIAMETER_METERS * arcLength / wheelDistance;
+    DataLogManager.log(String.format("Wheel diameter: %.5f m (nominal %.5f m)",
+            wheelDiameterMeters, ModuleConstants.WHEEL_DIAMETER_METERS));
+    writeConstants();
+  }
+
+  private void writeConstants() {
+    final var constants = new StringBuilder()
+            .append("// Drive characterization, ").append(LocalDateTime.now()).append('\n');
+    if (!Double.isNaN(fit.getKs())) {
+      constants.append(String.format("// Feedforward fit r^2 = %.4f over %d samples%n",
+                      fit.getRSquared(), fit.getSampleCount()))
+              .append(String.format("public static final double DRIVING_KS = %.5f; // volts%n", fit.getKs()))
+              .append(String.format("public static final double DRIVING_KV = %.5f; // volts per meter per second%n",
+                      fit.getKv()))
+              .append(String.format(
+                      "public static final double DRIVING_KA = %.5f; // volts per meter per second squared%n",
+                      fit.getKa()));
+    }
+    if (!Double.isNaN(wheelDiameterMeters)) {
+      constants.append(String.format("public static final double WHEEL_DIAMETER_METERS = %.5f;%n",
+              wheelDiameterMeters));
+    }
+
+    final Path file = Filesystem.getOperatingDirectory().toPath().resolve(CharacterizationConstants.OUTPUT_FILE);
+    try {
+      Files.writeString(file, constants);
+      DataLogManager.log("Wrote characterization results to " + file);
+    } catch (IOException e) {
+      DriverStation.reportError("Failed to write " + file + ": " + e.getMessage(), e.getStackTrace());
+    }
+    DataLogManager.log(constants.toString());
+  }
+
+  /**
+   * Applies a voltage of {@code direction * (step + rampRate * t)} and feeds the response into the fit. The voltage a
+   * sample is paired with is the one applied over the preceding cycle, since that's what the velocity responded to.
+   */
+  private class VoltageTest extends CommandBase {
+    private final double rampRate;
+    private final double step;
+    private final double timeout;
+    private final double direction;
+    private final Timer timer = new Timer();
+
+    private double lastTime;
+    private double lastVelocity;
+    private double lastVolts;
+
+    private VoltageTest(double rampRate, double step, double timeout, double direction) {
+      this.rampRate = rampRate;
+      this.step = step;
+      this.timeout = timeout;
+      this.direction = direction;
+      addRequirements(drive);
+    }
+
+    @Override public void initialize() {
+      timer.reset();
+      timer.start();
+      lastTime = 0.0;
+      lastVelocity = readVelocity();
+      lastVolts = 0.0;
+    }
+
+    @Override public void execute() {
+      final double time = timer.get();
+      final double velocity = readVelocity();
+      final double dt = time - lastTime;
+      if (dt > 0) {
+        final double acceleration = (velocity - lastVelocity) / dt;
+        if (Math.abs(velocity) >= CharacterizationConstants.MIN_VELOCITY) {
+          fit.addSample(lastVolts, velocity, acceleration);
+        }
+        logRecord[0] = Timer.getFPGATimestamp();
+        logRecord[1] = lastVolts;
+        logRecord[2] = velocity;
+        logRecord[3] = acceleration;
+        logEntry.append(logRecord);
+      }
+
+      lastVolts = direction * (step + rampRate * time);
+      drive.runCharacterization(lastVolts);
+      lastTime = time;
+      lastVelocity = velocity;
+    }
+
+    @Override public boolean isFinished() {
+      return timer.hasElapsed(timeout);
+    }
+
+    @Override public void end(boolean interrupted) {
+      timer.stop();
+      drive.runCharacterization(0);
+    }
+  }
+}
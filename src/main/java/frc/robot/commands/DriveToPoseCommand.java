@@ -0,0 +1,98 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.auto.AsyncPathPlanner;
+import frc.robot.auto.SampledPath;
+import frc.robot.subsystems.DriveSubsystem;
+
+import java.util.function.Supplier;
+
+/**
+ * Drives from wherever the robot is to a target pose. The path is generated by an {@link AsyncPathPlanner} while the
+ * robot holds still, then followed like a {@link FollowPathCommand}. If the target moves by more than
+ * {@link AutoConstants#REPLAN_TRANSLATION_TOLERANCE} or {@link AutoConstants#REPLAN_ROTATION_TOLERANCE}, the path is
+ * planned again from the current pose, and the old request is dropped. If a path can't be generated, the command ends.
+ */
+public class DriveToPoseCommand extends CommandBase {
+  private final DriveSubsystem drive;
+  private final AsyncPathPlanner planner;
+  private final Supplier<Pose2d> target;
+
+  private Pose2d requestedTarget;
+  private long request;
+  private FollowPathCommand follower;
+  private boolean failed;
+
+  /**
+   * @param drive   The drive subsystem.
+   * @param planner The planner to generate paths with.
+   * @param target  Supplies the pose to drive to. It's checked every cycle, so it may change while driving.
+   */
+  public DriveToPoseCommand(DriveSubsystem drive, AsyncPathPlanner planner, Supplier<Pose2d> target) {
+    this.drive = drive;
+    this.planner = planner;
+    this.target = target;
+    addRequirements(drive);
+  }
+
+  @Override public void initialize() {
+    follower = null;
+    failed = false;
+    plan(target.get());
+  }
+
+  @Override public void execute() {
+    final Pose2d currentTarget = target.get();
+    if (hasMoved(currentTarget)) {
+      stopFollowing();
+      plan(currentTarget);
+    }
+
+    if (follower == null) {
+      final SampledPath path = planner.poll(request);
+      if (path == null) {
+        if (planner.hasFailed(request)) {
+          DriverStation.reportWarning("Drive to pose gave up: no path to " + requestedTarget, false);
+          failed = true;
+        }
+        drive.drive(0, 0, 0, false, false);
+        return;
+      }
+      follower = new FollowPathCommand(drive, path);
+      follower.initialize();
+    }
+    follower.execute();
+  }
+
+  @Override public boolean isFinished() {
+    return failed || follower != null && follower.isFinished();
+  }
+
+  @Override public void end(boolean interrupted) {
+    planner.cancel();
+    stopFollowing();
+    drive.drive(0, 0, 0, false, false);
+  }
+
+  private boolean hasMoved(Pose2d currentTarget) {
+    return currentTarget.getTranslation().getDistance(requestedTarget.getTranslation())
+            > AutoConstants.REPLAN_TRANSLATION_TOLERANCE
+            || Math.abs(currentTarget.getRotation().minus(requestedTarget.getRotation()).getRadians())
+            > AutoConstants.REPLAN_ROTATION_TOLERANCE;
+  }
+
+  private void plan(Pose2d newTarget) {
+    requestedTarget = newTarget;
+    request = planner.request(drive.getPose(), newTarget);
+  }
+
+  private void stopFollowing() {
+    if (follower != null) {
+      follower.end(true);
+      follower = null;
+    }
+  }
+}
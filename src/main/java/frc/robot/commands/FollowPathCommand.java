@@ -0,0 +1,61 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.auto.SampledPath;
+import frc.robot.subsystems.DriveSubsystem;
+
+/**
+ * Follows a {@link SampledPath} with a holonomic controller: the path's velocity as feedforward, plus proportional
+ * correction of the position error, while a profiled controller turns the robot to the path's heading.
+ */
+public class FollowPathCommand extends CommandBase {
+  private final DriveSubsystem drive;
+  private final SampledPath path;
+  private final SampledPath.Sample sample = new SampledPath.Sample();
+  private final Timer timer = new Timer();
+
+  private final PIDController xController = new PIDController(AutoConstants.PX_CONTROLLER, 0, 0);
+  private final PIDController yController = new PIDController(AutoConstants.PY_CONTROLLER, 0, 0);
+  private final ProfiledPIDController thetaController = new ProfiledPIDController(
+          AutoConstants.P_THETA_CONTROLLER, 0, 0, AutoConstants.THETA_CONTROLLER_CONSTRAINTS);
+
+  public FollowPathCommand(DriveSubsystem drive, SampledPath path) {
+    this.drive = drive;
+    this.path = path;
+    thetaController.enableContinuousInput(-Math.PI, Math.PI);
+    addRequirements(drive);
+  }
+
+  @Override public void initialize() {
+    xController.reset();
+    yController.reset();
+    thetaController.reset(drive.getPose().getRotation().getRadians());
+    timer.reset();
+    timer.start();
+  }
+
+  @Override public void execute() {
+    path.sample(timer.get(), sample);
+    final var pose = drive.getPose();
+    final double heading = pose.getRotation().getRadians();
+
+    drive.driveFieldRelative(
+            sample.vx + xController.calculate(pose.getX(), sample.x),
+            sample.vy + yController.calculate(pose.getY(), sample.y),
+            thetaController.calculate(heading, sample.heading),
+            heading);
+  }
+
+  @Override public boolean isFinished() {
+    return timer.hasElapsed(path.getTotalTimeSeconds());
+  }
+
+  @Override public void end(boolean interrupted) {
+    timer.stop();
+    drive.drive(0, 0, 0, false, false);
+  }
+}
@@ -1,10 +1,13 @@
 package frc.robot.commands;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import frc.robot.RobotContainer;
 import frc.robot.Constants.IOConstants;
+import frc.robot.replay.DriveRecording;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.shuffleboard.GlobalTab;
 import frc.shuffleboard.ShuffleboardSpeed;
@@ -12,21 +15,40 @@ import frc.shuffleboard.ShuffleboardSpeed;
 public class SwerveDriveCommand extends CommandBase {
   private final CommandXboxController controller;
   private final DriveSubsystem drive;
+  private final DoubleArrayLogEntry recordEntry;
+  private final double[] record = new double[DriveRecording.LENGTH];
 
   public SwerveDriveCommand(CommandXboxController controller, DriveSubsystem drive) {
     this.controller = controller;
     this.drive = drive;
+    this.recordEntry = IOConstants.RECORD_DRIVE_INPUTS
+            ? new DoubleArrayLogEntry(DataLogManager.getLog(), DriveRecording.ENTRY)
+            : null;
     addRequirements(drive);
   }
 
   @Override public void execute() {
+    final double leftY = controller.getLeftY();
+    final double leftX = controller.getLeftX();
+    final double rightX = controller.getRightX();
+    final double speedMult = RobotContainer.SPEED_MULT.get();
+
     // TODO: 11/5/2023 Don't use rate limiting for now (leads to weird feeling control).  
     drive.drive(
-            MathUtil.applyDeadband(controller.getLeftY() * RobotContainer.SPEED_MULT.get(), IOConstants.DRIVE_DEADBAND),
-            MathUtil.applyDeadband(controller.getLeftX() * RobotContainer.SPEED_MULT.get(), IOConstants.DRIVE_DEADBAND),
-            MathUtil.applyDeadband(controller.getRightX(), IOConstants.DRIVE_DEADBAND),
+            MathUtil.applyDeadband(leftY * speedMult, IOConstants.DRIVE_DEADBAND),
+            MathUtil.applyDeadband(leftX * speedMult, IOConstants.DRIVE_DEADBAND),
+            MathUtil.applyDeadband(rightX, IOConstants.DRIVE_DEADBAND),
             true,
             false
     );
+
+    if (recordEntry != null) {
+      record[DriveRecording.LEFT_Y] = leftY;
+      record[DriveRecording.LEFT_X] = leftX;
+      record[DriveRecording.RIGHT_X] = rightX;
+      record[DriveRecording.SPEED_MULT] = speedMult;
+      drive.recordLastDrive(record);
+      recordEntry.append(record);
+    }
   }
 }
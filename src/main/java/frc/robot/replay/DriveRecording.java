@@ -0,0 +1,33 @@
+package frc.robot.replay;
+
+/**
+ * Layout of the per-cycle drive record written to the data log by {@link frc.robot.commands.SwerveDriveCommand} and
+ * read back by {@link DriveReplay}. Each record is a single double array: the driver inputs and sensor readings that
+ * went into {@link frc.robot.subsystems.DriveSubsystem#drive}, followed by the module setpoints that came out of it.
+ */
+public final class DriveRecording {
+  public static final String ENTRY = "/Replay/Drive";
+
+  /** The time the rate limiter saw, in seconds. */
+  public static final int TIME = 0;
+  /** The raw controller axes, before the speed multiplier and deadband. */
+  public static final int LEFT_Y = 1;
+  public static final int LEFT_X = 2;
+  public static final int RIGHT_X = 3;
+  public static final int SPEED_MULT = 4;
+  /** The navX angle used for field relative driving, in degrees. */
+  public static final int GYRO_ANGLE = 5;
+  /** The commanded module speeds, in front left, front right, back left, back right order. */
+  public static final int MODULE_SPEEDS = 6;
+  /** The commanded module angles relative to the chassis, in radians, same order as the speeds. */
+  public static final int MODULE_ANGLES = 10;
+  /** The speed scale the power manager had applied, see {@link frc.robot.subsystems.DriveSubsystem#setSpeedScale}. */
+  public static final int SPEED_SCALE = 14;
+  /** 1 if heading hold was enabled, 0 if not. */
+  public static final int HEADING_HOLD = 15;
+  /** The navX rate heading hold used, in degrees per second, clockwise positive like the navX reports it. */
+  public static final int GYRO_RATE = 16;
+  public static final int LENGTH = 17;
+
+  private DriveRecording() {}
+}
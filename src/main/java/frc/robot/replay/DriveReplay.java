@@ -0,0 +1,136 @@
+package frc.robot.replay;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.hal.SimDouble;
+import edu.wpi.first.hal.simulation.SimDeviceDataJNI;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import frc.robot.Constants.GyroConstants;
+import frc.robot.Constants.IOConstants;
+import frc.robot.RobotContainer;
+import frc.robot.commands.SwerveDriveCommand;
+import frc.robot.subsystems.DriveSubsystem;
+
+import java.io.IOException;
+
+/**
+ * Replays the drive records of a match log through {@link SwerveDriveCommand} and {@link DriveSubsystem#drive} on a
+ * desktop JVM, as fast as the CPU allows, and compares the module setpoints against the ones that were logged.
+ *
+ * <p>Run with {@code ./gradlew replayDrive --args="path/to/log.wpilog"}. The process exits non-zero if any cycle's
+ * setpoints differ from the log.
+ */
+public final class DriveReplay {
+  private static final double SPEED_TOLERANCE = 1e-6; // meters per second
+  private static final double ANGLE_TOLERANCE = 1e-6; // radians
+
+  private DriveReplay() {}
+
+  public static void main(String... args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: DriveReplay <log.wpilog>");
+      System.exit(2);
+    }
+
+    final var reader = new DataLogReader(args[0]);
+    if (!reader.isValid()) {
+      System.err.println(args[0] + " isn't a valid data log");
+      System.exit(2);
+    }
+
+    // Bring up the simulated HAL with the clock paused, so time only moves when a record says it did.
+    HAL.initialize(500, 0);
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.setAutonomous(false);
+    DriverStationSim.notifyNewData();
+
+    final var drive = new DriveSubsystem();
+    final var command = new SwerveDriveCommand(new CommandXboxController(IOConstants.DRIVER_CONTROLLER_PORT), drive);
+    final var controllerSim = new XboxControllerSim(IOConstants.DRIVER_CONTROLLER_PORT);
+    final int navX = SimDeviceDataJNI.getSimDeviceHandle("navX-Sensor[0]");
+    final var yaw = new SimDouble(SimDeviceDataJNI.getSimValueHandle(navX, "Yaw"));
+    final var rate = new SimDouble(SimDeviceDataJNI.getSimValueHandle(navX, "Rate"));
+    final double[] replayed = new double[DriveRecording.LENGTH];
+
+    int entryId = -1;
+    int cycles = 0;
+    int mismatches = 0;
+    double maxSpeedError = 0.0;
+    double maxAngleError = 0.0;
+    final long start = System.nanoTime();
+    command.initialize();
+
+    for (final DataLogRecord record : reader) {
+      if (record.isStart()) {
+        final var data = record.getStartData();
+        if (data.name.equals(DriveRecording.ENTRY)) {
+          entryId = data.entry;
+        }
+        continue;
+      }
+      if (record.isControl() || record.getEntry() != entryId) {
+        continue;
+      }
+
+      final double[] logged = record.getDoubleArray();
+      if (logged.length != DriveRecording.LENGTH) {
+        continue;
+      }
+
+      // The gyro is read by its own notifier, so set the yaw and rate before stepping the clock for them to be sampled.
+      yaw.set(logged[DriveRecording.GYRO_ANGLE]);
+      rate.set(logged[DriveRecording.GYRO_RATE]);
+
+      // Step the clock to the logged time; the first record just sets the origin.
+      final double dt = logged[DriveRecording.TIME] - Timer.getFPGATimestamp();
+      if (cycles > 0 && dt > 0) {
+        SimHooks.stepTiming(dt);
+      } else if (cycles == 0) {
+        SimHooks.stepTiming(1.0 / GyroConstants.UPDATE_RATE_HZ);
+      }
+
+      controllerSim.setLeftY(logged[DriveRecording.LEFT_Y]);
+      controllerSim.setLeftX(logged[DriveRecording.LEFT_X]);
+      controllerSim.setRightX(logged[DriveRecording.RIGHT_X]);
+      DriverStationSim.notifyNewData();
+      DriverStation.refreshData();
+      RobotContainer.SPEED_MULT.set(logged[DriveRecording.SPEED_MULT]);
+      drive.setSpeedScale(logged[DriveRecording.SPEED_SCALE]);
+      if (drive.isHeadingHoldEnabled() != (logged[DriveRecording.HEADING_HOLD] != 0.0)) {
+        drive.setHeadingHold(logged[DriveRecording.HEADING_HOLD] != 0.0);
+      }
+
+      command.execute();
+      drive.recordLastDrive(replayed);
+
+      boolean mismatch = false;
+      for (int i = 0; i < 4; i++) {
+        final double speedError = Math.abs(replayed[DriveRecording.MODULE_SPEEDS + i] - logged[DriveRecording.MODULE_SPEEDS + i]);
+        final double angleError = Math.abs(MathUtil.angleModulus(
+                replayed[DriveRecording.MODULE_ANGLES + i] - logged[DriveRecording.MODULE_ANGLES + i]));
+        maxSpeedError = Math.max(maxSpeedError, speedError);
+        maxAngleError = Math.max(maxAngleError, angleError);
+        mismatch |= speedError > SPEED_TOLERANCE || angleError > ANGLE_TOLERANCE;
+      }
+      if (mismatch) {
+        mismatches++;
+      }
+      cycles++;
+    }
+
+    final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("Replayed %d cycles in %.3f s (%.0f cycles/s)%n", cycles, elapsedSeconds, cycles / elapsedSeconds);
+    System.out.printf("Max module speed error: %.6f m/s, max module angle error: %.6f rad%n", maxSpeedError, maxAngleError);
+    System.out.printf("%d cycles differed from the log%n", mismatches);
+    System.exit(mismatches == 0 && cycles > 0 ? 0 : 1);
+  }
+}
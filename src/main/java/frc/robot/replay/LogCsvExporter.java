@@ -0,0 +1,126 @@
+package frc.robot.replay;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exports the numeric entries of a data log to CSV on the desktop, one file per entry, with the timestamp in seconds
+ * as the first column and one column per array element.
+ *
+ * <p>Run with {@code ./gradlew exportLogCsv --args="path/to/log.wpilog [output directory] [entry prefix]"}. By default
+ * the CSV files are written next to the log, and every entry under "/Drive", "/Telemetry" and "/LoopProfiler" is
+ * exported.
+ */
+public final class LogCsvExporter {
+  private static final String[] DEFAULT_PREFIXES = {"/Drive", "/Telemetry", "/LoopProfiler", "/Replay"};
+
+  private LogCsvExporter() {}
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 1 || args.length > 3) {
+      System.err.println("Usage: LogCsvExporter <log.wpilog> [output directory] [entry prefix]");
+      System.exit(2);
+    }
+
+    final var reader = new DataLogReader(args[0]);
+    if (!reader.isValid()) {
+      System.err.println(args[0] + " isn't a valid data log");
+      System.exit(2);
+    }
+
+    final Path logPath = Paths.get(args[0]).toAbsolutePath();
+    final Path outputDirectory = args.length >= 2 ? Paths.get(args[1]) : logPath.getParent();
+    final String[] prefixes = args.length >= 3 ? new String[] {args[2]} : DEFAULT_PREFIXES;
+    Files.createDirectories(outputDirectory);
+
+    final Map<Integer, DataLogRecord.StartRecordData> entries = new HashMap<>();
+    final Map<Integer, Writer> writers = new HashMap<>();
+    final var row = new StringBuilder();
+    int rows = 0;
+
+    try {
+      for (final DataLogRecord record : reader) {
+        if (record.isStart()) {
+          final var start = record.getStartData();
+          if (isExported(start, prefixes)) {
+            entries.put(start.entry, start);
+          }
+          continue;
+        }
+        if (record.isControl()) {
+          continue;
+        }
+
+        final var start = entries.get(record.getEntry());
+        if (start == null) {
+          continue;
+        }
+
+        Writer writer = writers.get(record.getEntry());
+        if (writer == null) {
+          writer = Files.newBufferedWriter(outputDirectory.resolve(fileName(start.name)));
+          writer.write("timestamp," + start.name + "\n");
+          writers.put(record.getEntry(), writer);
+        }
+
+        row.setLength(0);
+        row.append(record.getTimestamp() * 1e-6);
+        switch (start.type) {
+          case "double":
+            row.append(',').append(record.getDouble());
+            break;
+          case "double[]":
+            for (final double value : record.getDoubleArray()) {
+              row.append(',').append(value);
+            }
+            break;
+          case "int64":
+            row.append(',').append(record.getInteger());
+            break;
+          case "boolean":
+            row.append(',').append(record.getBoolean() ? 1 : 0);
+            break;
+          case "string":
+            row.append(",\"").append(record.getString().replace("\"", "\"\"")).append('"');
+            break;
+          case "string[]":
+            for (final String value : record.getStringArray()) {
+              row.append(",\"").append(value.replace("\"", "\"\"")).append('"');
+            }
+            break;
+          default:
+            continue;
+        }
+        writer.write(row.append('\n').toString());
+        rows++;
+      }
+    } finally {
+      for (final Writer writer : writers.values()) {
+        writer.close();
+      }
+    }
+
+    System.out.printf("Exported %d rows from %d entries to %s%n", rows, writers.size(), outputDirectory);
+  }
+
+  private static boolean isExported(DataLogRecord.StartRecordData start, String[] prefixes) {
+    for (final String prefix : prefixes) {
+      if (start.name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String fileName(String entryName) {
+    return entryName.replaceFirst("^/", "").replaceAll("[^A-Za-z0-9_.-]", "_") + ".csv";
+  }
+}
@@ -0,0 +1,338 @@
+package frc.robot.subsystems;
+
+import com.revrobotics.CANSparkMax.FaultID;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.HealthConstants;
+import frc.robot.Constants.ModuleConstants;
+import frc.shuffleboard.GlobalTab;
+import frc.utils.LoopProfiler;
+
+/**
+ * Watches the drivetrain's eight SPARKS MAX and their encoders for failures, and raises an alert the first time each
+ * one shows up. To keep the cost down, only one controller's faults and last error are read per cycle, round robin;
+ * the encoder, temperature and current checks only use the sensor snapshots and telemetry that are sampled anyway, so
+ * they don't add any CAN traffic.
+ *
+ * <p>A module whose controller stops answering, has an active motor, sensor or gate driver fault, or whose encoder
+ * stops changing while its motor looks disconnected is considered failed. Sticky faults can be left over from an
+ * earlier session, so they only raise alerts; the ones already there at startup are logged once and cleared. With
+ * {@link HealthConstants#AUTO_DEGRADE}, a failed module is disabled and the drivetrain keeps driving on the other
+ * three.
+ */
+public class DriveHealthMonitor extends SubsystemBase {
+  private static final FaultID[] FAULTS = FaultID.values();
+  // Faults that mean the controller can no longer run its motor properly
+  private static final int CRITICAL_FAULTS = (1 << FaultID.kMotorFault.value)
+          | (1 << FaultID.kSensorFault.value)
+          | (1 << FaultID.kDRVFault.value);
+
+  private final DriveSubsystem drive;
+  private final MAXSwerveModule[] modules;
+  private final MAXSwerveModule.SensorSnapshot sensors = new MAXSwerveModule.SensorSnapshot();
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("DriveHealthMonitor.periodic()");
+
+  // Per controller, indexed by module * 2 (+ 1 for turning)
+  private final short[] stickyFaults;
+  private final int[] canErrors;
+  private int nextController = 0;
+
+  // Per module
+  private final double[] lastDrivingPosition;
+  private final double[] lastTurningPosition;
+  private final double[] staleDrivingTime;
+  private final double[] staleTurningTime;
+  private final double[] drivingCurrentTime;
+  private final double[] turningCurrentTime;
+  private final boolean[] overheated;
+  private final boolean[] drivingStalled;
+  private final boolean[] turningStalled;
+  private final boolean[] failed;
+  private final String[] status;
+
+  private String lastAlert = "OK";
+  private double lastTime = Timer.getFPGATimestamp();
+
+  public DriveHealthMonitor(DriveSubsystem drive) {
+    this.drive = drive;
+    this.modules = drive.getModules();
+    stickyFaults = new short[modules.length * 2];
+    canErrors = new int[modules.length * 2];
+    lastDrivingPosition = new double[modules.length];
+    lastTurningPosition = new double[modules.length];
+    staleDrivingTime = new double[modules.length];
+    staleTurningTime = new double[modules.length];
+    drivingCurrentTime = new double[modules.length];
+    turningCurrentTime = new double[modules.length];
+    overheated = new boolean[modules.length];
+    drivingStalled = new boolean[modules.length];
+    turningStalled = new boolean[modules.length];
+    failed = new boolean[modules.length];
+    status = new String[modules.length];
+    for (int i = 0; i < modules.length; i++) {
+      status[i] = "OK";
+    }
+    logStartupFaults();
+
+    GlobalTab.MATCH.addString("Drive Health", () -> lastAlert);
+    GlobalTab.DEBUG.addStringArray("Drive Module Health", () -> status);
+    GlobalTab.DEBUG.add("Clear Drive Faults", new InstantCommand(this::clearFaults).ignoringDisable(true));
+  }
+
+  @Override public void periodic() {
+    periodicStage.start();
+
+    final double currentTime = Timer.getFPGATimestamp();
+    final double dt = currentTime - lastTime;
+    lastTime = currentTime;
+
+    checkController(nextController);
+    nextController = (nextController + 1) % stickyFaults.length;
+
+    // A disabled robot isn't commanding anything, so a still encoder is expected.
+    final boolean commanded = DriverStation.isEnabled();
+    for (int i = 0; i < modules.length; i++) {
+      checkEncoders(i, commanded, dt);
+      checkTelemetry(i, dt);
+    }
+
+    periodicStage.stop();
+  }
+
+  /**
+   * Logs the sticky faults every controller already has, which may be from an earlier session, and clears them so
+   * that only new ones are alerted on.
+   */
+  private void logStartupFaults() {
+    for (int controller = 0; controller < stickyFaults.length; controller++) {
+      final int module = controller / 2;
+      final boolean turning = controller % 2 == 1;
+      final short faults = modules[module].getStickyFaults(turning);
+      if (faults != 0) {
+        DataLogManager.log("Drive health: " + modules[module].getName() + " " + (turning ? "turning" : "driving")
+                + " SPARK MAX sticky faults at startup: " + describeFaults(faults));
+      }
+      // Clearing takes effect on the next status frame, so don't alert on these until they've been cleared.
+      stickyFaults[controller] = faults;
+    }
+    for (final MAXSwerveModule module : modules) {
+      module.clearFaults();
+    }
+  }
+
+  /**
+   * Checks one controller's faults and the result of the last call made to it. Only an active critical fault fails
+   * the module; a new sticky fault raises an alert.
+   */
+  private void checkController(int controller) {
+    final int module = controller / 2;
+    final boolean turning = controller % 2 == 1;
+    final String name = turning ? "turning" : "driving";
+
+    final short activeFaults = modules[module].getFaults(turning);
+    if ((activeFaults & CRITICAL_FAULTS) != 0) {
+      fail(module, name + " SPARK MAX faults: " + describeFaults(activeFaults));
+    }
+
+    final short faults = modules[module].getStickyFaults(turning);
+    final int newFaults = faults & ~stickyFaults[controller];
+    stickyFaults[controller] = faults;
+    if (newFaults != 0) {
+      alert(module, name + " SPARK MAX faults: " + describeFaults(newFaults));
+    }
+
+    final REVLibError error = modules[module].getLastError(turning);
+    if (error == REVLibError.kTimeout || error == REVLibError.kCANDisconnected) {
+      if (++canErrors[controller] == HealthConstants.CAN_ERROR_CHECKS) {
+        fail(module, name + " SPARK MAX isn't responding (" + error.name() + ")");
+      }
+    } else {
+      canErrors[controller] = 0;
+    }
+  }
+
+  /**
+   * Checks for encoders that haven't changed at all for a while, even though their motor is being told to move them.
+   * That alone is also what a healthy wheel looks like when it's stalled, e.g. pushing another robot, so the module
+   * only fails if there's also a sign of a disconnect: a CAN error, a motor that isn't drawing current, or a turning
+   * motor that spins while the ThroughBore stays put. Otherwise it's only a warning.
+   */
+  private void checkEncoders(int module, boolean commanded, double dt) {
+    final MAXSwerveModule swerveModule = modules[module];
+    swerveModule.getSensors(sensors);
+
+    final boolean drivingCommanded = commanded && swerveModule.getDrivingPIDController().isEnabled()
+            && Math.abs(swerveModule.getDesiredSpeed()) > HealthConstants.STALE_SPEED_THRESHOLD;
+    if (drivingCommanded && sensors.drivingPositionMeters == lastDrivingPosition[module]) {
+      staleDrivingTime[module] += dt;
+    } else {
+      staleDrivingTime[module] = 0.0;
+    }
+    lastDrivingPosition[module] = sensors.drivingPositionMeters;
+
+    // The module may drive backwards instead of turning all the way, so the error is within +/- 90 degrees.
+    final double turningError = Math.abs(MathUtil.angleModulus(swerveModule.getDesiredAngle()
+            + swerveModule.getChassisAngularOffset() - sensors.turningPositionRadians));
+    final boolean turningCommanded = commanded && swerveModule.getTurningPIDController().isEnabled()
+            && Math.min(turningError, Math.PI - turningError) > HealthConstants.STALE_ANGLE_THRESHOLD;
+    if (turningCommanded && sensors.turningPositionRadians == lastTurningPosition[module]) {
+      staleTurningTime[module] += dt;
+    } else {
+      staleTurningTime[module] = 0.0;
+    }
+    lastTurningPosition[module] = sensors.turningPositionRadians;
+
+    final double[] telemetry = swerveModule.getTelemetry();
+    if (staleDrivingTime[module] > HealthConstants.STALE_ENCODER_TIME) {
+      if (canErrors[module * 2] > 0) {
+        fail(module, "driving encoder isn't changing and its SPARK MAX has CAN errors");
+      } else if (telemetry[MAXSwerveModule.TELEMETRY_DRIVING_CURRENT] < HealthConstants.DISCONNECT_CURRENT) {
+        fail(module, "driving encoder isn't changing and the motor isn't drawing current");
+      } else if (!drivingStalled[module]) {
+        alert(module, "driving wheel is stalled");
+      }
+      drivingStalled[module] = true;
+    } else if (staleDrivingTime[module] == 0.0) {
+      drivingStalled[module] = false;
+    }
+
+    if (staleTurningTime[module] > HealthConstants.STALE_ENCODER_TIME) {
+      if (canErrors[module * 2 + 1] > 0) {
+        fail(module, "turning encoder isn't changing and its SPARK MAX has CAN errors");
+      } else if (telemetry[MAXSwerveModule.TELEMETRY_TURNING_CURRENT] < HealthConstants.DISCONNECT_CURRENT) {
+        fail(module, "turning encoder isn't changing and the motor isn't drawing current");
+      } else if (Math.abs(swerveModule.getTurningMotorVelocity()) > HealthConstants.TURNING_MOTOR_MOVING_RPM) {
+        fail(module, "turning motor is spinning but the ThroughBore isn't changing");
+      } else if (!turningStalled[module]) {
+        alert(module, "steering is stalled");
+      }
+      turningStalled[module] = true;
+    } else if (staleTurningTime[module] == 0.0) {
+      turningStalled[module] = false;
+    }
+  }
+
+  /**
+   * Checks the temperatures and currents last sampled by the {@link TelemetrySubsystem}.
+   */
+  private void checkTelemetry(int module, double dt) {
+    final double[] telemetry = modules[module].getTelemetry();
+
+    final boolean hot = telemetry[MAXSwerveModule.TELEMETRY_DRIVING_TEMPERATURE] > HealthConstants.MAX_TEMPERATURE
+            || telemetry[MAXSwerveModule.TELEMETRY_TURNING_TEMPERATURE] > HealthConstants.MAX_TEMPERATURE;
+    if (hot && !overheated[module]) {
+      alert(module, String.format("motor temperature %.0f/%.0f C",
+              telemetry[MAXSwerveModule.TELEMETRY_DRIVING_TEMPERATURE],
+              telemetry[MAXSwerveModule.TELEMETRY_TURNING_TEMPERATURE]));
+    }
+    overheated[module] = hot;
+
+    drivingCurrentTime[module] = sustainedCurrentTime(drivingCurrentTime[module],
+            telemetry[MAXSwerveModule.TELEMETRY_DRIVING_CURRENT], modules[module].getDrivingCurrentLimit(), dt);
+    if (drivingCurrentTime[module] > HealthConstants.SUSTAINED_CURRENT_TIME
+            && drivingCurrentTime[module] - dt <= HealthConstants.SUSTAINED_CURRENT_TIME) {
+      alert(module, "driving motor has been at its current limit, check for a stall");
+    }
+
+    turningCurrentTime[module] = sustainedCurrentTime(turningCurrentTime[module],
+            telemetry[MAXSwerveModule.TELEMETRY_TURNING_CURRENT], ModuleConstants.TURNING_MOTOR_CURRENT_LIMIT, dt);
+    if (turningCurrentTime[module] > HealthConstants.SUSTAINED_CURRENT_TIME
+            && turningCurrentTime[module] - dt <= HealthConstants.SUSTAINED_CURRENT_TIME) {
+      alert(module, "turning motor has been at its current limit, check for a bind");
+    }
+  }
+
+  private static double sustainedCurrentTime(double time, double current, double limit, double dt) {
+    return current > HealthConstants.SUSTAINED_CURRENT_FRACTION * limit ? time + dt : 0.0;
+  }
+
+  /**
+   * Raises an alert for a problem that doesn't stop the module from driving.
+   */
+  private void alert(int module, String message) {
+    final String text = modules[module].getName() + ": " + message;
+    if (!failed[module]) {
+      status[module] = message;
+    }
+    lastAlert = text;
+    DriverStation.reportWarning(text, false);
+    DataLogManager.log("Drive health: " + text);
+  }
+
+  /**
+   * Marks a module as failed, and disables it if the drivetrain can carry on without it. Only the first failure of
+   * each module is reported, until the faults are cleared.
+   */
+  private void fail(int module, String message) {
+    if (failed[module]) {
+      return;
+    }
+    failed[module] = true;
+
+    final String text = modules[module].getName() + " failed: " + message;
+    status[module] = "FAILED: " + message;
+    lastAlert = text;
+    DriverStation.reportError(text, false);
+    DataLogManager.log("Drive health: " + text);
+
+    if (HealthConstants.AUTO_DEGRADE && drive.isModuleEnabled(module)) {
+      if (drive.setModuleEnabled(module, false)) {
+        DataLogManager.log("Drive health: driving without " + modules[module].getName());
+      } else {
+        DriverStation.reportError("Too many drive modules have failed to disable "
+                + modules[module].getName(), false);
+      }
+    }
+  }
+
+  private static String describeFaults(int faults) {
+    final StringBuilder builder = new StringBuilder();
+    for (final FaultID fault : FAULTS) {
+      if ((faults & (1 << fault.value)) != 0) {
+        if (builder.length() > 0) {
+          builder.append(", ");
+        }
+        builder.append(fault.name());
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Clears every controller's sticky faults, forgets every alert and re-enables every module, e.g. once a loose CAN
+   * connection has been fixed in the pits.
+   */
+  public void clearFaults() {
+    for (int i = 0; i < modules.length; i++) {
+      modules[i].clearFaults();
+      drive.setModuleEnabled(i, true);
+      staleDrivingTime[i] = 0.0;
+      staleTurningTime[i] = 0.0;
+      drivingCurrentTime[i] = 0.0;
+      turningCurrentTime[i] = 0.0;
+      overheated[i] = false;
+      drivingStalled[i] = false;
+      turningStalled[i] = false;
+      failed[i] = false;
+      status[i] = "OK";
+    }
+    for (int i = 0; i < stickyFaults.length; i++) {
+      stickyFaults[i] = 0;
+      canErrors[i] = 0;
+    }
+    lastAlert = "OK";
+  }
+
+  /**
+   * @param module The index of the module, in {@link DriveSubsystem#getModules()} order.
+   * @return Whether the module has failed since the faults were last cleared.
+   */
+  public boolean hasFailed(int module) {
+    return failed[module];
+  }
+}
@@ -0,0 +1,74 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.IntegerLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.utils.LoopProfiler;
+
+/**
+ * Records the drivetrain's state to the on-robot data log every cycle, for post-match analysis. Appends only copy
+ * into the log's buffer; the log is written to disk by its own background thread, so the robot loop never blocks on
+ * I/O.
+ *
+ * <p>Module states are logged as [speed, angle] pairs in front left, front right, back left, back right order, with
+ * speeds in meters per second and angles relative to the chassis in radians. The slipping modules are logged as a
+ * bitmask in the same order.
+ */
+public class DriveLogger extends SubsystemBase {
+  private final DriveSubsystem drive;
+  private final MAXSwerveModule[] modules;
+  private final MAXSwerveModule.SensorSnapshot sensors = new MAXSwerveModule.SensorSnapshot();
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("DriveLogger.periodic()");
+
+  private final DoubleArrayLogEntry measuredStatesEntry;
+  private final DoubleArrayLogEntry desiredStatesEntry;
+  private final DoubleLogEntry headingEntry;
+  private final DoubleArrayLogEntry poseEntry;
+  private final IntegerLogEntry slippingEntry;
+
+  private final double[] measuredStates;
+  private final double[] desiredStates;
+  private final double[] pose = new double[3];
+
+  public DriveLogger(DriveSubsystem drive) {
+    this.drive = drive;
+    this.modules = drive.getModules();
+    this.measuredStates = new double[modules.length * 2];
+    this.desiredStates = new double[modules.length * 2];
+
+    final DataLog log = DataLogManager.getLog();
+    measuredStatesEntry = new DoubleArrayLogEntry(log, "/Drive/MeasuredStates");
+    desiredStatesEntry = new DoubleArrayLogEntry(log, "/Drive/DesiredStates");
+    headingEntry = new DoubleLogEntry(log, "/Drive/Heading");
+    poseEntry = new DoubleArrayLogEntry(log, "/Drive/Pose");
+    slippingEntry = new IntegerLogEntry(log, "/Drive/SlippingModules");
+  }
+
+  @Override public void periodic() {
+    periodicStage.start();
+
+    for (int i = 0; i < modules.length; i++) {
+      modules[i].getSensors(sensors);
+      measuredStates[i * 2] = sensors.drivingVelocityMetersPerSecond;
+      measuredStates[i * 2 + 1] = sensors.turningPositionRadians - modules[i].getChassisAngularOffset();
+      desiredStates[i * 2] = modules[i].getDesiredSpeed();
+      desiredStates[i * 2 + 1] = modules[i].getDesiredAngle();
+    }
+    measuredStatesEntry.append(measuredStates);
+    desiredStatesEntry.append(desiredStates);
+
+    headingEntry.append(drive.getHeading());
+
+    final var currentPose = drive.getPose();
+    pose[0] = currentPose.getX();
+    pose[1] = currentPose.getY();
+    pose[2] = currentPose.getRotation().getRadians();
+    poseEntry.append(pose);
+    slippingEntry.append(drive.getSlippingModules());
+
+    periodicStage.stop();
+  }
+}
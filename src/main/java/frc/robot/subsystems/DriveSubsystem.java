@@ -4,20 +4,55 @@
 
 package frc.robot.subsystems;
 
-import com.kauailabs.navx.frc.AHRS;
-import edu.wpi.first.math.filter.SlewRateLimiter;
+import edu.wpi.first.hal.SimDouble;
+import edu.wpi.first.hal.simulation.SimDeviceDataJNI;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.*;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.ModuleConstants.StatusFrameProfile;
+import frc.robot.Constants.TractionConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.replay.DriveRecording;
 import frc.shuffleboard.GlobalTab;
-import frc.utils.SwerveUtils;
+import frc.shuffleboard.TunableSparkMaxGains;
+import frc.utils.ChassisFit;
+import frc.utils.LoopProfiler;
+import frc.utils.SlipDetector;
+import frc.utils.SparkMaxConfig;
+import frc.utils.SwerveModuleBuffer;
+import frc.utils.SwerveRateLimiter;
+import frc.utils.SwerveSetpointGenerator;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DriveSubsystem extends SubsystemBase {
+  // Longer than this between drive calls and the previous setpoints are considered stale, in seconds
+  private static final double MAX_SETPOINT_PERIOD = 0.1;
+
   private final MAXSwerveModule frontLeft = new MAXSwerveModule(
           DriveConstants.FRONT_LEFT_DRIVING_CAN_ID,
           DriveConstants.FRONT_LEFT_TURNING_CAN_ID,
@@ -50,62 +85,422 @@ public class DriveSubsystem extends SubsystemBase {
           Shuffleboard.getTab("Back Right Motors")
   );
 
-  // The gyro sensor
-  private final AHRS gyro = new AHRS();
-
-  // Slew rate filter variables for controlling lateral acceleration
-  private double currentRotation = 0.0;
-  private double currentTranslationDir = 0.0;
-  private double currentTranslationMag = 0.0;
-
-  private final SlewRateLimiter magLimiter = new SlewRateLimiter(DriveConstants.MAGNITUDE_SLEW_RATE);
-  private final SlewRateLimiter rotLimiter = new SlewRateLimiter(DriveConstants.ROTATIONAL_SLEW_RATE);
-  private double prevTime = WPIUtilJNI.now() * 1e-6;
-
-  // Odometry class for tracking robot pose
-  private final SwerveDriveOdometry odometry = new SwerveDriveOdometry(
-          DriveConstants.DRIVE_KINEMATICS,
-          Rotation2d.fromDegrees(-gyro.getAngle()),
-          new SwerveModulePosition[] {
-                  frontLeft.getPosition(),
-                  frontRight.getPosition(),
-                  backLeft.getPosition(),
-                  backRight.getPosition()
-          });
-
+  private final MAXSwerveModule[] modules = { frontLeft, frontRight, backLeft, backRight };
+  private static final int ALL_MODULES = (1 << 4) - 1;
+  // Bit i is set while module i is driven and trusted by odometry. Read by the odometry thread.
+  private volatile int enabledModules = ALL_MODULES;
+  private StatusFrameProfile statusFrameProfile = ModuleConstants.DEFAULT_STATUS_FRAME_PROFILE;
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("DriveSubsystem.periodic()");
+
+  // Gains shared by every module, tunable from the dashboard and persisted across reboots.
+  private final TunableSparkMaxGains drivingGains;
+  private final TunableSparkMaxGains turningGains;
+
+  // The gyro sensor, sampled on its own thread
+  private final GyroService gyro = new GyroService();
+
+  // Slew rate filter for controlling lateral acceleration
+  private final SwerveRateLimiter rateLimiter = new SwerveRateLimiter(
+          DriveConstants.DIRECTION_SLEW_RATE,
+          DriveConstants.MAGNITUDE_SLEW_RATE,
+          DriveConstants.ROTATIONAL_SLEW_RATE,
+          WPIUtilJNI.now() * 1e-6);
+
+  // Pose estimator for tracking robot pose, fusing odometry with delayed vision measurements. It keeps a short
+  // history of odometry samples so a measurement can be applied at the time it was captured. It is only touched
+  // while holding odometryLock, since it's updated from the odometry notifier thread rather than the main robot loop.
+  private final Object odometryLock = new Object();
+  private final SwerveDrivePoseEstimator poseEstimator;
+  private final Notifier odometryNotifier = new Notifier(this::updateOdometry);
+  // The positions fed to the pose estimator. They're accumulated from how far each module moved, so a disabled
+  // module's position can be filled in from the others without jumping when it's enabled again.
+  private final SwerveModulePosition[] odometryPositions = {
+          new SwerveModulePosition(),
+          new SwerveModulePosition(),
+          new SwerveModulePosition(),
+          new SwerveModulePosition()
+  };
+  private final SwerveModulePosition[] measuredPositions = {
+          new SwerveModulePosition(),
+          new SwerveModulePosition(),
+          new SwerveModulePosition(),
+          new SwerveModulePosition()
+  };
+  // The heading fed to the pose estimator, only replaced when the gyro reading changes.
+  private Rotation2d odometryHeading = new Rotation2d();
+  private final double[] lastMeasuredDistances = new double[4];
+  private final double[] moduleDistances = new double[4];
+  private final double[] moduleDx = new double[4];
+  private final double[] moduleDy = new double[4];
+  private final ChassisFit odometryFit = new ChassisFit(DriveConstants.MODULE_LOCATIONS);
+
+  // Slipping wheels are left out of odometry, like disabled modules, and held back by traction control. The detector
+  // is updated on the odometry thread; the mask is published for the main loop.
+  private final SlipDetector slipDetector = new SlipDetector(
+          TractionConstants.SLIP_THRESHOLD, TractionConstants.SLIP_HOLD_TIME, DriveConstants.MODULE_LOCATIONS);
+  private final MAXSwerveModule.SensorSnapshot odometrySensors = new MAXSwerveModule.SensorSnapshot();
+  private final double[] moduleVx = new double[4];
+  private final double[] moduleVy = new double[4];
+  private final double[] groundSpeeds = new double[4];
+  private volatile int slippingModules = 0;
+
+  // Reused by drive() every cycle, so the drive loop doesn't allocate module states.
+  private final SwerveModuleBuffer moduleSetpoints = new SwerveModuleBuffer(DriveConstants.MODULE_LOCATIONS);
+  // Keeps consecutive setpoints within what the modules can steer and accelerate to.
+  private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+          moduleSetpoints,
+          DriveConstants.MAX_SPEED_METERS_PER_SECOND,
+          DriveConstants.MAX_MODULE_STEERING_VELOCITY,
+          DriveConstants.MAX_DRIVE_ACCELERATION);
+  private double lastSetpointTime = 0.0;
+  // What the last drive() call saw, for recording it.
+  private double lastDriveTime = 0.0;
+  private double lastDriveGyroAngle = 0.0;
+  private double lastDriveGyroRate = 0.0;
+  // Scales down what drive() delivers, e.g. when the battery is sagging. See PowerManager.
+  private double speedScale = 1.0;
+
+  // Heading hold for field relative driving. The heading is held once captured, until the driver rotates again or the
+  // robot is driven any other way.
+  private final ProfiledPIDController headingController = new ProfiledPIDController(
+          DriveConstants.HEADING_HOLD_P, 0, 0, DriveConstants.HEADING_HOLD_CONSTRAINTS);
+  private boolean headingHold = DriveConstants.HEADING_HOLD_DEFAULT;
+  private boolean holdingHeading = false;
+  private double heldHeading = 0.0;
+
+  // Simulation only: the ground truth pose, and the navX yaw and rate it drives.
+  private final Field2d field = new Field2d();
+  private Pose2d simulatedPose = new Pose2d();
+  // Unlike the pose's rotation, this doesn't wrap, like the real navX's angle.
+  private double simulatedHeading = 0.0;
+  private SimDouble simulatedYaw;
+  private SimDouble simulatedRate;
+
+  // Vision measurements rejected as outliers, only touched while holding odometryLock.
+  private int rejectedVisionMeasurements = 0;
+
+  // Latest fused pose and its timestamp, published together by the odometry thread. The sample is immutable, so
+  // readers never block and always see a pose with its own timestamp.
+  private volatile PoseSample poseSample = new PoseSample(new Pose2d(), Timer.getFPGATimestamp());
 
   /** Creates a new DriveSubsystem. */
   public DriveSubsystem() {
+    configureModules();
+    drivingGains = new TunableSparkMaxGains("Driving",
+            ModuleConstants.DRIVING_P, ModuleConstants.DRIVING_I, ModuleConstants.DRIVING_D, ModuleConstants.DRIVING_FF,
+            frontLeft.getDrivingPIDController().getController(), frontRight.getDrivingPIDController().getController(),
+            backLeft.getDrivingPIDController().getController(), backRight.getDrivingPIDController().getController());
+    turningGains = new TunableSparkMaxGains("Turning",
+            ModuleConstants.TURNING_P, ModuleConstants.TURNING_I, ModuleConstants.TURNING_D, ModuleConstants.TURNING_FF,
+            frontLeft.getTurningPIDController().getController(), frontRight.getTurningPIDController().getController(),
+            backLeft.getTurningPIDController().getController(), backRight.getTurningPIDController().getController());
+    for (int i = 0; i < modules.length; i++) {
+      final int index = i;
+      modules[i].getDrivingPIDController().withGains(drivingGains)
+              .withEnabledHandler(enabled -> setModuleEnabledFromDashboard(index, enabled));
+      modules[i].getTurningPIDController().withGains(turningGains)
+              .withEnabledHandler(enabled -> setModuleEnabledFromDashboard(index, enabled));
+    }
+
+    for (int i = 0; i < modules.length; i++) {
+      modules[i].updatePosition(odometryPositions[i]);
+      lastMeasuredDistances[i] = odometryPositions[i].distanceMeters;
+    }
+    poseEstimator = new SwerveDrivePoseEstimator(
+            DriveConstants.DRIVE_KINEMATICS,
+            new Rotation2d(gyro.getHeadingRadians()),
+            odometryPositions,
+            new Pose2d(),
+            VisionConstants.STATE_STD_DEVS,
+            VisionConstants.VISION_STD_DEVS);
+
     // zeroHeading();
     GlobalTab.MATCH.add("Gyro", gyro);
+    GlobalTab.MATCH.addBoolean("Drive Degraded", () -> enabledModules != ALL_MODULES);
+    GlobalTab.MATCH.addBoolean("Collision", gyro::hasRecentCollision);
+    GlobalTab.MATCH.addBoolean("Heading Hold", () -> headingHold);
+    headingController.enableContinuousInput(-Math.PI, Math.PI);
+    GlobalTab.DEBUG.addNumber("Slipping Modules", () -> Integer.bitCount(slippingModules));
+    GlobalTab.DEBUG.addNumber("Rejected Vision Measurements", this::getRejectedVisionMeasurements);
+    GlobalTab.DEBUG.addString("Status Frame Profile", () -> statusFrameProfile.name());
+    for (final var profile : StatusFrameProfile.values()) {
+      GlobalTab.DEBUG.add("Use " + profile.name() + " Status Frames",
+              new InstantCommand(() -> setStatusFrameProfile(profile)).ignoringDisable(true));
+    }
+
+    if (RobotBase.isSimulation()) {
+      final int navX = SimDeviceDataJNI.getSimDeviceHandle("navX-Sensor[0]");
+      simulatedYaw = new SimDouble(SimDeviceDataJNI.getSimValueHandle(navX, "Yaw"));
+      simulatedRate = new SimDouble(SimDeviceDataJNI.getSimValueHandle(navX, "Rate"));
+      GlobalTab.DEBUG.add("Field", field);
+    }
+
+    odometryNotifier.setName("Odometry");
+    odometryNotifier.startPeriodic(getOdometryPeriod(statusFrameProfile));
+  }
+
+  /**
+   * Returns the odometry period for a status frame profile: {@link DriveConstants#ODOMETRY_FREQUENCY_HZ}, or slower
+   * if the frames odometry reads (driving velocity and position, turning absolute position) arrive less often.
+   */
+  private static double getOdometryPeriod(StatusFrameProfile profile) {
+    final int slowestFrameMs = Math.max(Math.max(profile.drivingPeriodsMs[1], profile.drivingPeriodsMs[2]),
+            profile.turningPeriodsMs[5]);
+    return Math.max(1.0 / DriveConstants.ODOMETRY_FREQUENCY_HZ, slowestFrameMs / 1000.0);
+  }
+
+  /**
+   * Configures all eight SPARKS MAX concurrently, since each one spends most of its time waiting on CAN round
+   * trips. Controllers whose stored configuration already matches aren't reflashed.
+   */
+  private void configureModules() {
+    final long start = System.nanoTime();
+    if (RobotBase.isSimulation()) {
+      // There's nothing to configure, the modules are backed by MAXSwerveModuleSim.
+      for (final var module : modules) {
+        module.finishConfiguration();
+      }
+      return;
+    }
+
+    final var executor = Executors.newFixedThreadPool(modules.length * 2);
+    final var results = new ArrayList<Future<SparkMaxConfig.Result>>();
+    for (final var module : modules) {
+      results.add(executor.submit(module::configureDriving));
+      results.add(executor.submit(module::configureTurning));
+    }
+
+    int flashed = 0;
+    int failed = 0;
+    for (final var result : results) {
+      try {
+        switch (result.get()) {
+          case FLASHED:
+            flashed++;
+            break;
+          case FAILED:
+            failed++;
+            break;
+          default:
+            break;
+        }
+      } catch (InterruptedException | ExecutionException e) {
+        failed++;
+        DriverStation.reportError("Failed to configure SPARK MAX: " + e.getMessage(), e.getStackTrace());
+      }
+    }
+    executor.shutdown();
+
+    for (final var module : modules) {
+      module.finishConfiguration();
+    }
+
+    final double elapsedMs = (System.nanoTime() - start) / 1e6;
+    DataLogManager.log(String.format("Configured %d SPARKS MAX in %.1f ms (%d flashed, %d failed)",
+            results.size(), elapsedMs, flashed, failed));
+    GlobalTab.DEBUG.add("Drive Configuration Time (ms)", elapsedMs);
+    GlobalTab.DEBUG.add("Drive Configuration Failures", failed);
   }
 
   @Override public void periodic() {
-    // Update the odometry in the periodic block
-    odometry.update(
-            Rotation2d.fromDegrees(-gyro.getAngle()),
-            new SwerveModulePosition[] {
-                    frontLeft.getPosition(),
-                    frontRight.getPosition(),
-                    backLeft.getPosition(),
-                    backRight.getPosition()
-            });
+    periodicStage.start();
+    drivingGains.update();
+    turningGains.update();
+    periodicStage.stop();
+  }
+
+  @Override public void simulationPeriodic() {
+    final double dt = TimedRobot.kDefaultPeriod;
+    final var groundStates = new SwerveModuleState[modules.length];
+    for (int i = 0; i < modules.length; i++) {
+      modules[i].simulationPeriodic(dt);
+      groundStates[i] = modules[i].getSimulatedGroundState();
+    }
+
+    // Move the robot by how the modules actually moved over the ground, and feed the heading and its rate back through
+    // the navX. Without the rate, slip detection would blame the modules for every turn.
+    final var speeds = DriveConstants.DRIVE_KINEMATICS.toChassisSpeeds(groundStates);
+    simulatedPose = simulatedPose.exp(new Twist2d(
+            speeds.vxMetersPerSecond * dt,
+            speeds.vyMetersPerSecond * dt,
+            speeds.omegaRadiansPerSecond * dt));
+    simulatedHeading += speeds.omegaRadiansPerSecond * dt;
+    simulatedYaw.set(-Math.toDegrees(simulatedHeading));
+    simulatedRate.set(-Math.toDegrees(speeds.omegaRadiansPerSecond));
+
+    field.setRobotPose(getPose());
+    field.getObject("Simulated").setPose(simulatedPose);
+  }
+
+  /**
+   * Returns the ground truth pose of the simulated robot, as opposed to the pose estimator's estimate of it. Only
+   * meaningful in simulation.
+   *
+   * @return The simulated pose.
+   */
+  public Pose2d getSimulatedPose() {
+    return simulatedPose;
   }
 
   /**
-   * Returns the currently-estimated pose of the robot.
+   * Samples the module positions and gyro heading, and integrates them into the pose estimator along with
+   * the time they were sampled at. This runs on the odometry notifier thread at
+   * {@link DriveConstants#ODOMETRY_FREQUENCY_HZ}, or at the status frame rate if that's slower.
+   */
+  private void updateOdometry() {
+    final var timestamp = Timer.getFPGATimestamp();
+    synchronized (odometryLock) {
+      sampleOdometry(timestamp);
+      // The estimator returns a new Pose2d anyway, and a published sample has to stay as it is for readers still
+      // holding it, so wrapping it in a new sample is an accepted allocation rather than a pooled buffer.
+      poseSample = new PoseSample(poseEstimator.updateWithTime(timestamp, odometryHeading, odometryPositions),
+              timestamp);
+    }
+  }
+
+  /**
+   * Samples the module positions and gyro heading into {@link #odometryPositions} and {@link #odometryHeading}, ready
+   * for the pose estimator. This runs at the odometry rate, so everything but the angles is reused. Rotation2d is
+   * immutable, so a sample allocates one for the heading and each module angle that changed since the last sample, and
+   * one for each slipping module whose angle is filled in from the fit: none while the robot sits still, but a few
+   * every sample while it drives and turns. Must be called holding odometryLock, so a reset can't land between
+   * sampling and integrating. Package-private for tests.
+   *
+   * @param timestamp The FPGA timestamp of the sample, in seconds.
+   */
+  void sampleOdometry(double timestamp) {
+    final double heading = gyro.getHeadingAt(timestamp);
+    if (heading != odometryHeading.getRadians()) {
+      odometryHeading = new Rotation2d(heading);
+    }
+    final double omega = gyro.getRate();
+    for (int i = 0; i < modules.length; i++) {
+      modules[i].refreshSensors();
+      modules[i].updatePosition(measuredPositions[i]);
+      modules[i].getSensors(odometrySensors);
+      moduleVx[i] = odometrySensors.drivingVelocityMetersPerSecond * measuredPositions[i].angle.getCos();
+      moduleVy[i] = odometrySensors.drivingVelocityMetersPerSecond * measuredPositions[i].angle.getSin();
+    }
+
+    final int enabled = enabledModules;
+    final int slipping = slipDetector.update(moduleVx, moduleVy, omega, enabled, timestamp);
+    slippingModules = slipping;
+    accumulatePositions(enabled & ~slipping);
+  }
+
+  /**
+   * Advances the odometry positions by how far each module moved since the last sample. A disabled or slipping
+   * module's encoders can't be trusted, so its motion is filled in from the chassis motion that best fits the trusted
+   * modules.
+   */
+  private void accumulatePositions(int trusted) {
+    for (int i = 0; i < modules.length; i++) {
+      moduleDistances[i] = measuredPositions[i].distanceMeters - lastMeasuredDistances[i];
+      lastMeasuredDistances[i] = measuredPositions[i].distanceMeters;
+      moduleDx[i] = moduleDistances[i] * measuredPositions[i].angle.getCos();
+      moduleDy[i] = moduleDistances[i] * measuredPositions[i].angle.getSin();
+    }
+
+    final boolean fitted = trusted != ALL_MODULES && odometryFit.fit(moduleDx, moduleDy, trusted);
+    for (int i = 0; i < modules.length; i++) {
+      if ((trusted & (1 << i)) != 0) {
+        odometryPositions[i].distanceMeters += moduleDistances[i];
+        odometryPositions[i].angle = measuredPositions[i].angle;
+      } else if (fitted) {
+        final double dx = odometryFit.getModuleDx(i);
+        final double dy = odometryFit.getModuleDy(i);
+        final double distance = Math.hypot(dx, dy);
+        if (distance > 1e-9) {
+          odometryPositions[i].distanceMeters += distance;
+          final double angle = Math.atan2(dy, dx);
+          if (angle != odometryPositions[i].angle.getRadians()) {
+            odometryPositions[i].angle = new Rotation2d(angle);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Fuses a vision measurement into the pose estimate, using the default vision standard deviations, or tighter ones
+   * right after a collision. See {@link #addVisionMeasurement(Pose2d, double, Matrix)}.
+   *
+   * @param visionPose       The robot pose measured by vision.
+   * @param timestampSeconds The FPGA timestamp the measurement was captured at, in seconds.
+   */
+  public void addVisionMeasurement(Pose2d visionPose, double timestampSeconds) {
+    addVisionMeasurement(visionPose, timestampSeconds, hasRecentCollision()
+            ? VisionConstants.COLLISION_VISION_STD_DEVS
+            : VisionConstants.VISION_STD_DEVS);
+  }
+
+  /**
+   * Fuses a vision measurement into the pose estimate. The measurement is applied at the point in the odometry
+   * history it was captured at, and the odometry since then is replayed on top of it, so camera and processing
+   * latency don't pull the estimate back in time. Measurements older than the history are ignored, and so are
+   * outliers further than {@link VisionConstants#MAX_VISION_TRANSLATION_ERROR} or
+   * {@link VisionConstants#MAX_VISION_ROTATION_ERROR} from the current estimate. To correct a bigger error, e.g. the
+   * robot having been placed somewhere else, use {@link #resetOdometry(Pose2d)}.
+   *
+   * <p>This is safe to call from any thread, e.g. a camera's NetworkTables listener.
+   *
+   * @param visionPose       The robot pose measured by vision.
+   * @param timestampSeconds The FPGA timestamp the measurement was captured at, in seconds. This must be the capture
+   *                         time, not the time the result arrived.
+   * @param stdDevs          Standard deviations of the measurement's x (meters), y (meters) and heading (radians).
+   */
+  public void addVisionMeasurement(Pose2d visionPose, double timestampSeconds, Matrix<N3, N1> stdDevs) {
+    synchronized (odometryLock) {
+      final var estimate = poseEstimator.getEstimatedPosition();
+      if (estimate.getTranslation().getDistance(visionPose.getTranslation())
+              > VisionConstants.MAX_VISION_TRANSLATION_ERROR
+              || Math.abs(estimate.getRotation().minus(visionPose.getRotation()).getRadians())
+              > VisionConstants.MAX_VISION_ROTATION_ERROR) {
+        rejectedVisionMeasurements++;
+        return;
+      }
+      poseEstimator.addVisionMeasurement(visionPose, timestampSeconds, stdDevs);
+      poseSample = new PoseSample(poseEstimator.getEstimatedPosition(), poseSample.timestampSeconds);
+    }
+  }
+
+  /**
+   * @return How many vision measurements have been rejected as outliers since the robot started.
+   */
+  public int getRejectedVisionMeasurements() {
+    synchronized (odometryLock) {
+      return rejectedVisionMeasurements;
+    }
+  }
+
+  /**
+   * Returns the currently-estimated pose of the robot. This is safe to call from any thread and never
+   * blocks on the odometry thread.
    *
    * @return The pose.
    */
   public Pose2d getPose() {
-    return odometry.getPoseMeters();
+    return poseSample.pose;
+  }
+
+  /**
+   * Returns the currently-estimated pose of the robot together with the FPGA timestamp of the odometry sample it was
+   * computed from. Use this rather than separate calls when both are needed, since the odometry thread may publish a
+   * new pose in between.
+   *
+   * @return The pose and its timestamp.
+   */
+  public PoseSample getPoseSample() {
+    return poseSample;
   }
 
   public void setAngleDegrees(double angleDegrees) {
-    frontLeft.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(angleDegrees)));
-    frontRight.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-1 * angleDegrees)));
-    backLeft.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-1 * angleDegrees)));
-    backRight.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(angleDegrees)));
+    setpointGenerator.reset();
+    holdingHeading = false;
+    frontLeft.setDesiredState(0, Math.toRadians(angleDegrees));
+    frontRight.setDesiredState(0, Math.toRadians(-1 * angleDegrees));
+    backLeft.setDesiredState(0, Math.toRadians(-1 * angleDegrees));
+    backRight.setDesiredState(0, Math.toRadians(angleDegrees));
   }
 
   /**
@@ -114,15 +509,15 @@ public class DriveSubsystem extends SubsystemBase {
    * @param pose The pose to which to set the odometry.
    */
   public void resetOdometry(Pose2d pose) {
-    odometry.resetPosition(
-            Rotation2d.fromDegrees(-gyro.getAngle()),
-            new SwerveModulePosition[] {
-                    frontLeft.getPosition(),
-                    frontRight.getPosition(),
-                    backLeft.getPosition(),
-                    backRight.getPosition()
-            },
-            pose);
+    if (RobotBase.isSimulation()) {
+      // Teleport the simulated robot too, so it keeps lining up with the odometry.
+      simulatedPose = new Pose2d(pose.getTranslation(), simulatedPose.getRotation());
+    }
+
+    synchronized (odometryLock) {
+      poseEstimator.resetPosition(new Rotation2d(gyro.getHeadingRadians()), odometryPositions, pose);
+      poseSample = new PoseSample(poseEstimator.getEstimatedPosition(), Timer.getFPGATimestamp());
+    }
   }
 
   /**
@@ -138,82 +533,205 @@ public class DriveSubsystem extends SubsystemBase {
   public void drive(double xSpeed, double ySpeed, double rot, boolean fieldRelative, boolean rateLimit) {
     double xSpeedCommanded;
     double ySpeedCommanded;
+    double rotCommanded;
 
+    final double currentTime = WPIUtilJNI.now() * 1e-6;
+    lastDriveTime = currentTime;
     if (rateLimit) {
-      // Convert XY to polar for rate limiting
-      double inputTranslationDir = Math.atan2(ySpeed, xSpeed);
-      double inputTranslationMag = Math.sqrt(Math.pow(xSpeed, 2) + Math.pow(ySpeed, 2));
-
-      // Calculate the direction slew rate based on an estimate of the lateral acceleration
-      double directionSlewRate;
-      if (currentTranslationMag != 0.0) {
-        directionSlewRate = Math.abs(DriveConstants.DIRECTION_SLEW_RATE / currentTranslationMag);
-      } else {
-        directionSlewRate = 500.0; //some high number that means the slew rate is effectively instantaneous
-      }
+      rateLimiter.calculate(xSpeed, ySpeed, rot, currentTime);
+      xSpeedCommanded = rateLimiter.getXSpeed();
+      ySpeedCommanded = rateLimiter.getYSpeed();
+      rotCommanded = rateLimiter.getRotation();
+    } else {
+      xSpeedCommanded = xSpeed;
+      ySpeedCommanded = ySpeed;
+      rotCommanded = rot;
+    }
 
+    // Convert the commanded speeds into the correct units for the drivetrain
+    double xSpeedDelivered = xSpeedCommanded * DriveConstants.MAX_SPEED_METERS_PER_SECOND * speedScale;
+    double ySpeedDelivered = ySpeedCommanded * DriveConstants.MAX_SPEED_METERS_PER_SECOND * speedScale;
+    double rotDelivered = rotCommanded * DriveConstants.MAX_ANGULAR_SPEED * speedScale;
 
-      double currentTime = WPIUtilJNI.now() * 1e-6;
-      double elapsedTime = currentTime - prevTime;
-      double angleDif = SwerveUtils.AngleDifference(inputTranslationDir, currentTranslationDir);
-      if (angleDif < 0.45*Math.PI) {
-        currentTranslationDir = SwerveUtils.StepTowardsCircular(currentTranslationDir, inputTranslationDir, directionSlewRate * elapsedTime);
-        currentTranslationMag = magLimiter.calculate(inputTranslationMag);
-      }
-      else if (angleDif > 0.85*Math.PI) {
-        if (currentTranslationMag > 1e-4) { //some small number to avoid floating-point errors with equality checking
-          // keep currentTranslationDir unchanged
-          currentTranslationMag = magLimiter.calculate(0.0);
-        }
-        else {
-          currentTranslationDir = SwerveUtils.WrapAngle(currentTranslationDir + Math.PI);
-          currentTranslationMag = magLimiter.calculate(inputTranslationMag);
-        }
-      }
-      else {
-        currentTranslationDir = SwerveUtils.StepTowardsCircular(currentTranslationDir, inputTranslationDir, directionSlewRate * elapsedTime);
-        currentTranslationMag = magLimiter.calculate(0.0);
+    if (fieldRelative && headingHold) {
+      rotDelivered = holdHeading(xSpeedDelivered, ySpeedDelivered, rotDelivered);
+    } else {
+      holdingHeading = false;
+    }
+
+    if (fieldRelative) {
+      // Rotate the field-relative speeds into the robot's frame, same as ChassisSpeeds.fromFieldRelativeSpeeds().
+      final double heading = gyro.getHeadingRadians();
+      lastDriveGyroAngle = -Math.toDegrees(heading);
+      final double cos = Math.cos(heading);
+      final double sin = Math.sin(heading);
+      final double fieldX = xSpeedDelivered;
+      xSpeedDelivered = fieldX * cos + ySpeedDelivered * sin;
+      ySpeedDelivered = -fieldX * sin + ySpeedDelivered * cos;
+    }
+
+    setChassisSpeeds(xSpeedDelivered, ySpeedDelivered, rotDelivered);
+  }
+
+  /**
+   * Works out the angular rate for heading hold. While the driver is rotating, their input goes through unchanged.
+   * Once they let go and the robot stops turning, the heading is captured, and from then on a profiled controller
+   * steers back to it, damped by the gyro rate. The correction is only applied while translating, so a stationary
+   * robot doesn't scrub its wheels holding its heading.
+   *
+   * @param xSpeed The delivered field relative x speed, in meters per second.
+   * @param ySpeed The delivered field relative y speed, in meters per second.
+   * @param rot    The delivered angular rate, in radians per second.
+   * @return The angular rate to drive at, in radians per second.
+   */
+  private double holdHeading(double xSpeed, double ySpeed, double rot) {
+    if (rot != 0.0) {
+      holdingHeading = false;
+      return rot;
+    }
+
+    final double heading = gyro.getHeadingRadians();
+    final double rate = gyro.getRate();
+    lastDriveGyroRate = Math.toDegrees(rate) * (DriveConstants.GYRO_REVERSED ? -1.0 : 1.0);
+    if (!holdingHeading) {
+      if (Math.abs(rate) > DriveConstants.HEADING_CAPTURE_RATE) {
+        // Let the robot stop turning first, so it doesn't swing back to where the driver let go.
+        return 0.0;
       }
-      prevTime = currentTime;
+      heldHeading = heading;
+      holdingHeading = true;
+      headingController.reset(heading, rate);
+    }
 
-      xSpeedCommanded = currentTranslationMag * Math.cos(currentTranslationDir);
-      ySpeedCommanded = currentTranslationMag * Math.sin(currentTranslationDir);
-      currentRotation = rotLimiter.calculate(rot);
+    if (xSpeed == 0.0 && ySpeed == 0.0) {
+      headingController.reset(heading, rate);
+      return 0.0;
+    }
 
+    final double feedback = headingController.calculate(heading, heldHeading);
+    final double setpointVelocity = headingController.getSetpoint().velocity;
+    final double maxRate = DriveConstants.MAX_ANGULAR_SPEED * speedScale;
+    return MathUtil.clamp(setpointVelocity + feedback + DriveConstants.HEADING_HOLD_D * (setpointVelocity - rate),
+            -maxRate, maxRate);
+  }
 
-    } else {
-      xSpeedCommanded = xSpeed;
-      ySpeedCommanded = ySpeed;
-      currentRotation = rot;
+  /**
+   * Enables or disables heading hold for field relative {@link #drive} calls.
+   *
+   * @param enabled Whether to hold the heading while there's no rotation input.
+   */
+  public void setHeadingHold(boolean enabled) {
+    headingHold = enabled;
+    holdingHeading = false;
+  }
+
+  /**
+   * @return Whether heading hold is enabled.
+   */
+  public boolean isHeadingHoldEnabled() {
+    return headingHold;
+  }
+
+  /**
+   * Drives the robot at a field-relative velocity, without rate limiting. This is meant for closed loop control, e.g.
+   * path following, which has its own estimate of the heading.
+   *
+   * @param vxMetersPerSecond     Velocity in the field's x direction.
+   * @param vyMetersPerSecond     Velocity in the field's y direction.
+   * @param omegaRadiansPerSecond Angular rate of the robot, counter-clockwise positive.
+   * @param headingRadians        The robot's heading on the field, e.g. from {@link #getPose()}.
+   */
+  public void driveFieldRelative(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                                 double headingRadians) {
+    holdingHeading = false;
+    final double cos = Math.cos(headingRadians);
+    final double sin = Math.sin(headingRadians);
+    setChassisSpeeds(
+            vxMetersPerSecond * cos + vyMetersPerSecond * sin,
+            -vxMetersPerSecond * sin + vyMetersPerSecond * cos,
+            omegaRadiansPerSecond);
+  }
+
+  /**
+   * Converts robot-relative chassis speeds into module setpoints and sends them to the modules. The setpoints step
+   * towards the requested speeds only as fast as the modules can steer and accelerate.
+   */
+  private void setChassisSpeeds(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond) {
+    final double currentTime = WPIUtilJNI.now() * 1e-6;
+    double dt = currentTime - lastSetpointTime;
+    lastSetpointTime = currentTime;
+    if (dt > MAX_SETPOINT_PERIOD) {
+      // The modules haven't been driven in a while (e.g. the robot was disabled), so they've stopped.
+      setpointGenerator.reset();
+      dt = TimedRobot.kDefaultPeriod;
     }
 
-    // Convert the commanded speeds into the correct units for the drivetrain
-    double xSpeedDelivered = xSpeedCommanded * DriveConstants.MAX_SPEED_METERS_PER_SECOND;
-    double ySpeedDelivered = ySpeedCommanded * DriveConstants.MAX_SPEED_METERS_PER_SECOND;
-    double rotDelivered = currentRotation * DriveConstants.MAX_ANGULAR_SPEED;
-
-    var swerveModuleStates = DriveConstants.DRIVE_KINEMATICS.toSwerveModuleStates(
-            fieldRelative
-                    ? ChassisSpeeds.fromFieldRelativeSpeeds(xSpeedDelivered, ySpeedDelivered, rotDelivered, Rotation2d.fromDegrees(-gyro.getAngle()))
-                    : new ChassisSpeeds(xSpeedDelivered, ySpeedDelivered, rotDelivered));
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-            swerveModuleStates, DriveConstants.MAX_SPEED_METERS_PER_SECOND);
+    setpointGenerator.generate(vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond, dt);
+
+    final int slipping = TractionConstants.TRACTION_CONTROL ? slippingModules : 0;
+    if (slipping != 0) {
+      synchronized (odometryLock) {
+        for (int i = 0; i < modules.length; i++) {
+          groundSpeeds[i] = slipDetector.getGroundSpeed(i);
+        }
+      }
+    }
+
+    for (int i = 0; i < modules.length; i++) {
+      double speed = moduleSetpoints.speeds[i];
+      if ((slipping & (1 << i)) != 0) {
+        // Traction control: only ask a slipping wheel for a little more than it's moving over the ground, so it grips
+        // again. The setpoint generator keeps the unlimited speed, so the wheel catches back up once it does.
+        speed = Math.min(speed, groundSpeeds[i] + TractionConstants.TRACTION_MARGIN);
+      }
+      modules[i].setDesiredState(speed, moduleSetpoints.angles[i]);
+    }
+  }
+
+  /**
+   * Copies the time, gyro angle and gyro rate the last {@link #drive} call used, and the module setpoints it produced,
+   * into a drive record. The driver inputs are left for the caller to fill in.
+   *
+   * @param record The record to fill, laid out as described by {@link DriveRecording}.
+   */
+  public void recordLastDrive(double[] record) {
+    record[DriveRecording.TIME] = lastDriveTime;
+    record[DriveRecording.GYRO_ANGLE] = lastDriveGyroAngle;
+    record[DriveRecording.GYRO_RATE] = lastDriveGyroRate;
+    record[DriveRecording.SPEED_SCALE] = speedScale;
+    record[DriveRecording.HEADING_HOLD] = headingHold ? 1.0 : 0.0;
+    for (int i = 0; i < moduleSetpoints.size(); i++) {
+      record[DriveRecording.MODULE_SPEEDS + i] = moduleSetpoints.speeds[i];
+      record[DriveRecording.MODULE_ANGLES + i] = moduleSetpoints.angles[i];
+    }
+  }
 
+  /**
+   * Scales down the max speed and angular speed {@link #drive} delivers for full joystick input.
+   *
+   * @param scale The fraction of the max speeds, from 0 to 1.
+   */
+  public void setSpeedScale(double scale) {
+    speedScale = MathUtil.clamp(scale, 0.0, 1.0);
+  }
 
-    frontLeft.setDesiredState(swerveModuleStates[0]);
-    frontRight.setDesiredState(swerveModuleStates[1]);
-    backLeft.setDesiredState(swerveModuleStates[2]);
-    backRight.setDesiredState(swerveModuleStates[3]);
+  /**
+   * @return The fraction of the max speeds {@link #drive} currently delivers.
+   */
+  public double getSpeedScale() {
+    return speedScale;
   }
 
   /**
    * Sets the wheels into an X formation to prevent movement.
    */
   public void setX() {
-    frontLeft.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(45)));
-    frontRight.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-45)));
-    backLeft.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-45)));
-    backRight.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(45)));
+    setpointGenerator.reset();
+    holdingHeading = false;
+    frontLeft.setDesiredState(0, Math.toRadians(45));
+    frontRight.setDesiredState(0, Math.toRadians(-45));
+    backLeft.setDesiredState(0, Math.toRadians(-45));
+    backRight.setDesiredState(0, Math.toRadians(45));
   }
 
   /**
@@ -224,12 +742,100 @@ public class DriveSubsystem extends SubsystemBase {
   public void setModuleStates(SwerveModuleState[] desiredStates) {
     SwerveDriveKinematics.desaturateWheelSpeeds(
             desiredStates, DriveConstants.MAX_SPEED_METERS_PER_SECOND);
+    setpointGenerator.reset();
+    holdingHeading = false;
     frontLeft.setDesiredState(desiredStates[0]);
     frontRight.setDesiredState(desiredStates[1]);
     backLeft.setDesiredState(desiredStates[2]);
     backRight.setDesiredState(desiredStates[3]);
   }
 
+  /**
+   * Drives every module open loop at the given voltage with its wheel pointed straight forward, for
+   * characterization.
+   *
+   * @param volts The voltage to apply to the driving motors.
+   */
+  public void runCharacterization(double volts) {
+    setpointGenerator.reset();
+    holdingHeading = false;
+    for (final var module : modules) {
+      module.runCharacterization(volts);
+    }
+  }
+
+  /**
+   * Returns the swerve modules, in front left, front right, back left, back right order.
+   *
+   * @return The modules.
+   */
+  public MAXSwerveModule[] getModules() {
+    return modules;
+  }
+
+  /**
+   * Enables or disables a module. A disabled module's motors are stopped, the setpoints no longer have to stay
+   * within what it can reach, and odometry fills in its motion from the other modules, so the robot keeps driving
+   * on the remaining ones. At least three modules are always kept enabled.
+   *
+   * @param index   The index of the module, in {@link #getModules()} order.
+   * @param enabled Whether the module should be enabled.
+   * @return Whether the module is now in the requested state.
+   */
+  public boolean setModuleEnabled(int index, boolean enabled) {
+    final int mask = enabled ? enabledModules | (1 << index) : enabledModules & ~(1 << index);
+    if (Integer.bitCount(mask) < modules.length - 1) {
+      return false;
+    }
+
+    modules[index].setEnabled(enabled);
+    setpointGenerator.setEnabledModules(mask);
+    enabledModules = mask;
+    return true;
+  }
+
+  /**
+   * Handles a module's enable toggle on the dashboard, which enables or disables the whole module, so the setpoints
+   * and odometry know about it too.
+   */
+  private void setModuleEnabledFromDashboard(int index, boolean enabled) {
+    if (!setModuleEnabled(index, enabled)) {
+      DriverStation.reportWarning("Can't disable " + modules[index].getName()
+              + ", at least three drive modules have to stay enabled", false);
+    }
+  }
+
+  /**
+   * Returns the modules whose wheels were slipping at the last odometry sample. They're left out of odometry, and
+   * held back by traction control if it's enabled.
+   *
+   * @return A bitmask with bit i set if module i, in {@link #getModules()} order, is slipping.
+   */
+  public int getSlippingModules() {
+    return slippingModules;
+  }
+
+  /**
+   * @param index The index of the module, in {@link #getModules()} order.
+   * @return Whether the module is enabled.
+   */
+  public boolean isModuleEnabled(int index) {
+    return (enabledModules & (1 << index)) != 0;
+  }
+
+  /**
+   * Switches every module's SPARKS MAX to the given status frame profile.
+   *
+   * @param profile The profile to apply.
+   */
+  public void setStatusFrameProfile(StatusFrameProfile profile) {
+    for (final var module : modules) {
+      module.setStatusFrameProfile(profile);
+    }
+    statusFrameProfile = profile;
+    odometryNotifier.startPeriodic(getOdometryPeriod(profile));
+  }
+
   /** Resets the drive encoders to currently read a position of 0. */
   public void resetEncoders() {
     frontLeft.resetEncoders();
@@ -241,15 +847,25 @@ public class DriveSubsystem extends SubsystemBase {
   /** Zeroes the heading of the robot. */
   public void zeroHeading() {
     gyro.reset();
+    holdingHeading = false;
   }
 
   /**
    * Returns the heading of the robot.
    *
-   * @return the robot's heading in degrees, from -180 to 180
+   * @return the robot's heading in degrees
    */
   public double getHeading() {
-    return Rotation2d.fromDegrees(-gyro.getAngle()).getDegrees();
+    return Math.toDegrees(gyro.getHeadingRadians());
+  }
+
+  /**
+   * Returns the heading of the robot without wrapping, so it keeps counting up over multiple turns.
+   *
+   * @return The robot's heading in radians, counter-clockwise positive.
+   */
+  public double getContinuousHeadingRadians() {
+    return gyro.getHeadingRadians();
   }
 
   /**
@@ -258,6 +874,29 @@ public class DriveSubsystem extends SubsystemBase {
    * @return The turn rate of the robot, in degrees per second
    */
   public double getTurnRate() {
-    return gyro.getRate() * (DriveConstants.GYRO_REVERSED ? -1.0 : 1.0);
+    return Math.toDegrees(gyro.getRate());
+  }
+
+  /**
+   * Returns whether the gyro detected a collision recently, in which case the wheels have likely slipped and odometry
+   * is less trustworthy than usual.
+   *
+   * @return Whether there was a collision within {@link frc.robot.Constants.GyroConstants#COLLISION_HOLD_TIME}.
+   */
+  public boolean hasRecentCollision() {
+    return gyro.hasRecentCollision();
+  }
+
+  /**
+   * An estimated pose and the FPGA timestamp of the odometry sample it was computed from.
+   */
+  public static final class PoseSample {
+    public final Pose2d pose;
+    public final double timestampSeconds;
+
+    public PoseSample(Pose2d pose, double timestampSeconds) {
+      this.pose = pose;
+      this.timestampSeconds = timestampSeconds;
+    }
   }
 }
@@ -0,0 +1,207 @@
+package frc.robot.subsystems;
+
+import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.GyroConstants;
+
+/**
+ * Samples the navX on its own notifier, so every consumer reads the same sample instead of going back to the navX for
+ * each value. The notifier runs at twice the navX's update rate, since it isn't synchronized with the navX, and only
+ * keeps reads whose sensor timestamp changed. The yaw of each sample is kept in a ring buffer, stamped with the time
+ * the navX measured it (mapped to FPGA time), so the heading can be interpolated at the time something else was
+ * measured, e.g. a module's encoders.
+ *
+ * <p>Each sample's world frame linear acceleration is compared with the previous one, and a jerk above
+ * {@link GyroConstants#COLLISION_JERK_THRESHOLD} is flagged as a collision, since the wheels have likely slipped and
+ * odometry shouldn't be trusted as much for a moment.
+ *
+ * <p>Headings are counter-clockwise positive radians and don't wrap, so they keep counting up over multiple turns.
+ * Every getter is safe to call from any thread.
+ */
+public class GyroService implements Sendable {
+  private static final int HISTORY_SIZE = (int) Math.ceil(GyroConstants.HISTORY_SECONDS * GyroConstants.UPDATE_RATE_HZ);
+
+  private final AHRS gyro = new AHRS(SPI.Port.kMXP, (byte) GyroConstants.UPDATE_RATE_HZ);
+  private final Notifier notifier = new Notifier(this::sample);
+  // The simulated navX doesn't stamp its samples
+  private final boolean simulated = RobotBase.isSimulation();
+
+  // Ring buffer of samples, only touched while holding its monitor.
+  private final double[] timestamps = new double[HISTORY_SIZE];
+  private final double[] headings = new double[HISTORY_SIZE];
+  private int nextSample = 0;
+  private int sampleCount = 0;
+
+  private volatile double heading = 0.0;
+  private volatile double rate = 0.0;
+  private volatile double lastCollisionTime = Double.NEGATIVE_INFINITY;
+
+  // Only touched while holding this object's monitor, since reset() runs on the caller's thread
+  // navX clock, in seconds
+  private double lastSensorTime = Double.NaN;
+  // Samples stamped at or before this may be from before the last reset
+  private double resetSensorTime = Double.NEGATIVE_INFINITY;
+  private double clockOffset = Double.NaN; // FPGA time minus navX time, seconds
+  private double lastTimestamp = 0.0;
+  private double lastAccelX = 0.0;
+  private double lastAccelY = 0.0;
+
+  public GyroService() {
+    sample();
+    notifier.setName("Gyro");
+    notifier.startPeriodic(0.5 / GyroConstants.UPDATE_RATE_HZ);
+  }
+
+  /**
+   * Reads the yaw, rate and acceleration once and appends them to the history, unless the navX hasn't updated since
+   * the last read.
+   */
+  private synchronized void sample() {
+    final double now = Timer.getFPGATimestamp();
+    final double sensorTime = getSensorTime(now);
+    if (sensorTime == lastSensorTime || sensorTime <= resetSensorTime) {
+      return;
+    }
+
+    // Map the navX's clock to FPGA time with the smallest offset seen, i.e. from the read with the least latency. The
+    // offset may creep up slowly, so the mapping follows the clocks drifting apart.
+    final double offset = now - sensorTime;
+    clockOffset = Double.isNaN(clockOffset) ? offset : Math.min(offset,
+            clockOffset + GyroConstants.CLOCK_DRIFT_RATE * Math.max(sensorTime - lastSensorTime, 0.0));
+    lastSensorTime = sensorTime;
+    // Never step back in time, the history has to stay in order
+    final double timestamp = Math.max(sensorTime + clockOffset, lastTimestamp);
+
+    final double sampleHeading = Math.toRadians(-gyro.getAngle());
+    final double sampleRate = Math.toRadians(gyro.getRate()) * (DriveConstants.GYRO_REVERSED ? -1.0 : 1.0);
+    final double accelX = gyro.getWorldLinearAccelX();
+    final double accelY = gyro.getWorldLinearAccelY();
+
+    final double dt = timestamp - lastTimestamp;
+    if (sampleCount > 0 && dt > 0) {
+      final double jerk = Math.hypot(accelX - lastAccelX, accelY - lastAccelY) / dt;
+      if (jerk > GyroConstants.COLLISION_JERK_THRESHOLD) {
+        if (timestamp - lastCollisionTime > GyroConstants.COLLISION_HOLD_TIME) {
+          DataLogManager.log(String.format("Gyro: collision detected, jerk %.1f g/s", jerk));
+        }
+        lastCollisionTime = timestamp;
+      }
+    }
+    lastTimestamp = timestamp;
+    lastAccelX = accelX;
+    lastAccelY = accelY;
+
+    synchronized (timestamps) {
+      timestamps[nextSample] = timestamp;
+      headings[nextSample] = sampleHeading;
+      nextSample = (nextSample + 1) % HISTORY_SIZE;
+      sampleCount = Math.min(sampleCount + 1, HISTORY_SIZE);
+    }
+    heading = sampleHeading;
+    rate = sampleRate;
+  }
+
+  /**
+   * @return The time the navX's latest update was measured at, on the navX's clock, in seconds. The simulated navX
+   *         doesn't stamp its updates, so it's the given FPGA time there.
+   */
+  private double getSensorTime(double now) {
+    return simulated ? now : gyro.getLastSensorTimestamp() / 1000.0;
+  }
+
+  /**
+   * @return The heading of the latest sample, in radians.
+   */
+  public double getHeadingRadians() {
+    return heading;
+  }
+
+  /**
+   * Returns the heading at the given time, interpolated between the samples either side of it. Times outside the
+   * history return the oldest or latest sample.
+   *
+   * @param timestampSeconds The FPGA timestamp, in seconds.
+   * @return The heading, in radians.
+   */
+  public double getHeadingAt(double timestampSeconds) {
+    synchronized (timestamps) {
+      if (sampleCount == 0) {
+        return heading;
+      }
+      final int oldest = (nextSample - sampleCount + HISTORY_SIZE) % HISTORY_SIZE;
+      final int latest = (nextSample - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+      if (timestampSeconds >= timestamps[latest]) {
+        return headings[latest];
+      }
+      if (timestampSeconds <= timestamps[oldest]) {
+        return headings[oldest];
+      }
+
+      // Find the first sample at or after the timestamp. Samples are in time order from the oldest.
+      int low = 0;
+      int high = sampleCount - 1;
+      while (low < high) {
+        final int mid = (low + high) / 2;
+        if (timestamps[(oldest + mid) % HISTORY_SIZE] < timestampSeconds) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      final int after = (oldest + low) % HISTORY_SIZE;
+      final int before = (after - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+      final double t = (timestampSeconds - timestamps[before]) / (timestamps[after] - timestamps[before]);
+      return headings[before] + (headings[after] - headings[before]) * t;
+    }
+  }
+
+  /**
+   * @return The angular rate of the latest sample, counter-clockwise positive, in radians per second.
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * @return The FPGA timestamp of the last detected collision, in seconds, or negative infinity if there hasn't
+   *         been one.
+   */
+  public double getLastCollisionTime() {
+    return lastCollisionTime;
+  }
+
+  /**
+   * @return Whether a collision was detected within the last {@link GyroConstants#COLLISION_HOLD_TIME}.
+   */
+  public boolean hasRecentCollision() {
+    return Timer.getFPGATimestamp() - lastCollisionTime < GyroConstants.COLLISION_HOLD_TIME;
+  }
+
+  /**
+   * Zeroes the yaw. The history is cleared, since the older samples are relative to the previous zero. The navX
+   * applies the zero asynchronously, so samples are ignored until it has finished a full update after this call; the
+   * one in flight may have been measured before the zero. Until then, the heading reads 0.
+   */
+  public synchronized void reset() {
+    gyro.reset();
+    resetSensorTime = getSensorTime(Timer.getFPGATimestamp()) + 1.0 / GyroConstants.UPDATE_RATE_HZ;
+    synchronized (timestamps) {
+      nextSample = 0;
+      sampleCount = 0;
+    }
+    heading = 0.0;
+  }
+
+  @Override public void initSendable(SendableBuilder builder) {
+    // Shown like the navX itself: degrees, clockwise positive.
+    builder.setSmartDashboardType("Gyro");
+    builder.addDoubleProperty("Value", () -> -Math.toDegrees(heading), null);
+  }
+}
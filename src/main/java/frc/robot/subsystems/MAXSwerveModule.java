@@ -6,125 +6,409 @@ package frc.robot.subsystems;
 
 import com.revrobotics.AbsoluteEncoder;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+import com.revrobotics.REVLibError;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
 import com.revrobotics.SparkMaxPIDController;
+import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.ModuleConstants.StatusFrameProfile;
 import frc.shuffleboard.TunableSparkMaxPIDController;
+import frc.utils.SparkMaxConfig;
 
 public class MAXSwerveModule {
+  // Longer than this between setpoints and the acceleration feedforward is skipped, in seconds
+  private static final double MAX_SETPOINT_PERIOD = 0.1;
+
+  // Indices into the batched telemetry array, see sampleTelemetry().
+  public static final int TELEMETRY_DRIVING_APPLIED_OUTPUT = 0;
+  public static final int TELEMETRY_DRIVING_CURRENT = 1;
+  public static final int TELEMETRY_DRIVING_TEMPERATURE = 2;
+  public static final int TELEMETRY_TURNING_APPLIED_OUTPUT = 3;
+  public static final int TELEMETRY_TURNING_CURRENT = 4;
+  public static final int TELEMETRY_TURNING_TEMPERATURE = 5;
+  public static final int TELEMETRY_RELATIVE_ANGLE = 6;
+  public static final int TELEMETRY_DESIRED_SPEED = 7;
+  public static final int TELEMETRY_DESIRED_ANGLE = 8;
+  public static final String[] TELEMETRY_FIELDS = {
+          "Driving Applied Duty Cycle",
+          "Driving Applied Amperage",
+          "Driving Temperature (C)",
+          "Turning Applied Duty Cycle",
+          "Turning Applied Amperage",
+          "Turning Temperature (C)",
+          "Turning Relative Angle (Degrees)",
+          "Desired Speed (m/s)",
+          "Desired Angle (Degrees)"
+  };
+
+  private static final PeriodicFrame[] STATUS_FRAMES = {
+          PeriodicFrame.kStatus0,
+          PeriodicFrame.kStatus1,
+          PeriodicFrame.kStatus2,
+          PeriodicFrame.kStatus3,
+          PeriodicFrame.kStatus4,
+          PeriodicFrame.kStatus5,
+          PeriodicFrame.kStatus6
+  };
+
+  private final String name;
+  private final CANSparkMax drivingSparkMax;
+  private final CANSparkMax turningSparkMax;
   private final RelativeEncoder drivingEncoder;
   private final AbsoluteEncoder turningEncoder;
+  // The NEO 550's built-in encoder, only used to tell a disconnected ThroughBore from a stalled module
+  private final RelativeEncoder turningMotorEncoder;
 
   private final SparkMaxPIDController drivingPIDController;
   private final SparkMaxPIDController turningPIDController;
+  // References go through these, so the dashboard can show them and disable either loop.
+  private final TunableSparkMaxPIDController drivingTunable;
+  private final TunableSparkMaxPIDController turningTunable;
+  private final SimpleMotorFeedforward drivingFeedforward = new SimpleMotorFeedforward(
+          ModuleConstants.DRIVING_KS, ModuleConstants.DRIVING_KV, ModuleConstants.DRIVING_KA);
+
+  private final SparkMaxConfig drivingConfig;
+  private final SparkMaxConfig turningConfig;
 
   private final double chassisAngularOffset;
-  private SwerveModuleState desiredState = new SwerveModuleState(0.0, new Rotation2d());
+  // Set from PowerManager's worker thread, read from the main loop
+  private volatile int drivingCurrentLimit = ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT;
+  // Last requested state, relative to the chassis. Kept as primitives so setting it never allocates.
+  private double desiredSpeed = 0.0;
+  private double desiredAngle = 0.0;
+  private double desiredTime = 0.0;
+  private final double[] telemetry = new double[TELEMETRY_FIELDS.length];
+
+  // Latest encoder sample. Written by refreshSensors() on the odometry thread and read from the main loop, so it's
+  // only touched while holding its monitor.
+  private final SensorSnapshot sensors = new SensorSnapshot();
+
+  // Stands in for the SPARKS MAX and encoders when running in simulation, null on the robot.
+  private final MAXSwerveModuleSim sim = RobotBase.isSimulation() ? new MAXSwerveModuleSim() : null;
 
   /**
-   * Constructs a MAXSwerveModule and configures the driving and turning motor,
+   * Constructs a MAXSwerveModule and describes the configuration of the driving and turning motor,
    * encoder, and SparkMaxPIDController. This configuration is specific to the REV
    * MAXSwerve Module built with NEOs, SPARKS MAX, and a ThroughBore
-   * Encoder.
+   * Encoder. The configuration isn't written to the SPARKS MAX until {@link #configureDriving()}
+   * and {@link #configureTurning()} are called, followed by {@link #finishConfiguration()}.
    */
   @SuppressWarnings("resource")
   public MAXSwerveModule(int drivingCANId, int turningCANId, double chassisAngularOffset, boolean invertDrivingDirection, ShuffleboardTab tab) {
-    final var drivingSparkMax = new CANSparkMax(drivingCANId, MotorType.kBrushless);
-    final var turningSparkMax = new CANSparkMax(turningCANId, MotorType.kBrushless);
-
-    // Factory reset, so we get the SPARKS MAX to a known state before configuring
-    // them. This is useful in case a SPARK MAX is swapped out.
-    drivingSparkMax.restoreFactoryDefaults();
-    turningSparkMax.restoreFactoryDefaults();
-
-    drivingSparkMax.setInverted(invertDrivingDirection);
+    this.name = tab.getTitle();
+    drivingSparkMax = new CANSparkMax(drivingCANId, MotorType.kBrushless);
+    turningSparkMax = new CANSparkMax(turningCANId, MotorType.kBrushless);
 
     // Setup encoders and PID controllers for the driving and turning SPARKS MAX.
     drivingEncoder = drivingSparkMax.getEncoder();
     turningEncoder = turningSparkMax.getAbsoluteEncoder(Type.kDutyCycle);
+    turningMotorEncoder = turningSparkMax.getEncoder();
     drivingPIDController = drivingSparkMax.getPIDController();
     turningPIDController = turningSparkMax.getPIDController();
-    drivingPIDController.setFeedbackDevice(drivingEncoder);
-    turningPIDController.setFeedbackDevice(turningEncoder);
-
-    // Apply position and velocity conversion factors for the driving encoder. The
-    // native units for position and velocity are rotations and RPM, respectively,
-    // but we want meters and meters per second to use with WPILib's swerve APIs.
-    drivingEncoder.setPositionConversionFactor(ModuleConstants.DRIVING_ENCODER_POSITION_FACTOR);
-    drivingEncoder.setVelocityConversionFactor(ModuleConstants.DRIVING_ENCODER_VELOCITY_FACTOR);
-
-    // Apply position and velocity conversion factors for the turning encoder. We
-    // want these in radians and radians per second to use with WPILib's swerve
-    // APIs.
-    turningEncoder.setPositionConversionFactor(ModuleConstants.TURNING_ENCODER_POSITION_FACTOR);
-    turningEncoder.setVelocityConversionFactor(ModuleConstants.TURNING_ENCODER_VELOCITY_FACTOR);
-
-    // Invert the turning encoder, since the output shaft rotates in the opposite direction of
-    // the steering motor in the MAXSwerve Module.
-    turningEncoder.setInverted(ModuleConstants.TURNING_ENCODER_INVERTED);
-
-    // Enable PID wrap around for the turning motor. This will allow the PID
-    // controller to go through 0 to get to the setpoint i.e. going from 350 degrees
-    // to 10 degrees will go through 0 rather than the other direction which is a
-    // longer route.
-    turningPIDController.setPositionPIDWrappingEnabled(true);
-    turningPIDController.setPositionPIDWrappingMinInput(ModuleConstants.TURNING_ENCODER_POSITION_PID_MIN_INPUT);
-    turningPIDController.setPositionPIDWrappingMaxInput(ModuleConstants.TURNING_ENCODER_POSITION_PID_MAX_INPUT);
-
-    // Set the PID gains for the driving motor. Note these are example gains, and you
-    // may need to tune them for your own robot!
-    drivingPIDController.setP(ModuleConstants.DRIVING_P);
-    drivingPIDController.setI(ModuleConstants.DRIVING_I);
-    drivingPIDController.setD(ModuleConstants.DRIVING_D);
-    drivingPIDController.setFF(ModuleConstants.DRIVING_FF);
-    drivingPIDController.setOutputRange(ModuleConstants.DRIVING_MIN_OUTPUT,
-            ModuleConstants.DRIVING_MAX_OUTPUT);
-
-    // Set the PID gains for the turning motor. Note these are example gains, and you
-    // may need to tune them for your own robot!
-    turningPIDController.setP(ModuleConstants.TURNING_P);
-    turningPIDController.setI(ModuleConstants.TURNING_I);
-    turningPIDController.setD(ModuleConstants.TURNING_D);
-    turningPIDController.setFF(ModuleConstants.TURNING_FF);
-    turningPIDController.setOutputRange(ModuleConstants.TURNING_MIN_OUTPUT,
-            ModuleConstants.TURNING_MAX_OUTPUT);
-
-    drivingSparkMax.setIdleMode(ModuleConstants.DRIVING_MOTOR_IDLE_MODE);
-    turningSparkMax.setIdleMode(ModuleConstants.TURNING_MOTOR_IDLE_MODE);
-    drivingSparkMax.setSmartCurrentLimit(ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT);
-    turningSparkMax.setSmartCurrentLimit(ModuleConstants.TURNING_MOTOR_CURRENT_LIMIT);
-
-    // Save the SPARK MAX configurations. If a SPARK MAX browns out during
-    // operation, it will maintain the above configurations.
-    drivingSparkMax.burnFlash();
-    turningSparkMax.burnFlash();
+    drivingTunable = new TunableSparkMaxPIDController(drivingPIDController, () -> {
+      synchronized (sensors) {
+        return sensors.drivingVelocityMetersPerSecond;
+      }
+    });
+    turningTunable = new TunableSparkMaxPIDController(turningPIDController, () -> {
+      synchronized (sensors) {
+        return sensors.turningPositionRadians;
+      }
+    }).withPositionWrapping(
+            ModuleConstants.TURNING_ENCODER_POSITION_PID_MIN_INPUT,
+            ModuleConstants.TURNING_ENCODER_POSITION_PID_MAX_INPUT);
+    // Setpoints from the dashboard go through setDesiredState(), so the driving motor gets its feedforward.
+    drivingTunable.withReferenceHandler(speed -> setDesiredState(speed, desiredAngle));
+    turningTunable.withReferenceHandler(position -> setDesiredState(desiredSpeed, position - chassisAngularOffset));
+
+    drivingConfig = new SparkMaxConfig()
+            .withInverted(invertDrivingDirection)
+            .withIdleMode(ModuleConstants.DRIVING_MOTOR_IDLE_MODE)
+            .withSmartCurrentLimit(ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT)
+            // Compensate for the battery voltage, so the PID loop behaves the same under load.
+            .withVoltageCompensation(ModuleConstants.NOMINAL_VOLTAGE)
+            // Apply position and velocity conversion factors for the driving encoder. The
+            // native units for position and velocity are rotations and RPM, respectively,
+            // but we want meters and meters per second to use with WPILib's swerve APIs.
+            .withRelativeEncoder(
+                    ModuleConstants.DRIVING_ENCODER_POSITION_FACTOR,
+                    ModuleConstants.DRIVING_ENCODER_VELOCITY_FACTOR)
+            // Set the PID gains for the driving motor. Note these are example gains, and you
+            // may need to tune them for your own robot!
+            .withPIDF(
+                    ModuleConstants.DRIVING_P,
+                    ModuleConstants.DRIVING_I,
+                    ModuleConstants.DRIVING_D,
+                    ModuleConstants.DRIVING_FF)
+            .withOutputRange(ModuleConstants.DRIVING_MIN_OUTPUT, ModuleConstants.DRIVING_MAX_OUTPUT);
+
+    turningConfig = new SparkMaxConfig()
+            .withIdleMode(ModuleConstants.TURNING_MOTOR_IDLE_MODE)
+            .withSmartCurrentLimit(ModuleConstants.TURNING_MOTOR_CURRENT_LIMIT)
+            // Apply position and velocity conversion factors for the turning encoder. We
+            // want these in radians and radians per second to use with WPILib's swerve
+            // APIs. Invert the turning encoder, since the output shaft rotates in the
+            // opposite direction of the steering motor in the MAXSwerve Module.
+            .withAbsoluteEncoder(
+                    ModuleConstants.TURNING_ENCODER_POSITION_FACTOR,
+                    ModuleConstants.TURNING_ENCODER_VELOCITY_FACTOR,
+                    ModuleConstants.TURNING_ENCODER_INVERTED)
+            // Set the PID gains for the turning motor. Note these are example gains, and you
+            // may need to tune them for your own robot!
+            .withPIDF(
+                    ModuleConstants.TURNING_P,
+                    ModuleConstants.TURNING_I,
+                    ModuleConstants.TURNING_D,
+                    ModuleConstants.TURNING_FF)
+            .withOutputRange(ModuleConstants.TURNING_MIN_OUTPUT, ModuleConstants.TURNING_MAX_OUTPUT)
+            // Enable PID wrap around for the turning motor. This will allow the PID
+            // controller to go through 0 to get to the setpoint i.e. going from 350 degrees
+            // to 10 degrees will go through 0 rather than the other direction which is a
+            // longer route.
+            .withPositionWrapping(
+                    ModuleConstants.TURNING_ENCODER_POSITION_PID_MIN_INPUT,
+                    ModuleConstants.TURNING_ENCODER_POSITION_PID_MAX_INPUT);
 
     this.chassisAngularOffset = chassisAngularOffset;
-    desiredState.angle = new Rotation2d(turningEncoder.getPosition());
-    drivingEncoder.setPosition(0);
 
     /*
      * For debugging
      */
     tab.add("(Driving) ID", drivingCANId);
-    tab.addNumber("(Driving Applied Duty Cycle", drivingSparkMax::getAppliedOutput);
-    tab.addNumber("(Driving) Applied Amperage", drivingSparkMax::getOutputCurrent);
-    tab.addNumber("(Driving) Temperature (C)", drivingSparkMax::getMotorTemperature);
-    tab.add("(Driving) PID Controller", new TunableSparkMaxPIDController(drivingPIDController));
+    tab.add("(Driving) PID Controller", drivingTunable);
 
     tab.add("(Turning) ID", turningCANId);
-    // TOOD: Lowk this angle measurement in degrees is kinda bad.
-    tab.addNumber("(Turning) Relative Angle (Degrees)", () -> Math.toDegrees(turningEncoder.getPosition() - chassisAngularOffset));
-    tab.addNumber("(Turning) Applied Duty Cycle", turningSparkMax::getAppliedOutput);
-    tab.addNumber("(Turning) Applied Amperage", turningSparkMax::getOutputCurrent);
-    tab.addNumber("(Turning) Temperature (C)", turningSparkMax::getMotorTemperature);
-    tab.add("(Turning) Turning PID Controller", new TunableSparkMaxPIDController(turningPIDController));
+    tab.add("(Turning) Turning PID Controller", turningTunable);
+  }
+
+  /**
+   * Applies the driving SPARK MAX configuration, only burning flash if it changed. This blocks on CAN, and is
+   * safe to run concurrently with the other controllers' configuration.
+   *
+   * @return The result of the configuration.
+   */
+  public SparkMaxConfig.Result configureDriving() {
+    return drivingConfig.apply(drivingSparkMax);
+  }
+
+  /**
+   * Applies the turning SPARK MAX configuration, only burning flash if it changed. This blocks on CAN, and is
+   * safe to run concurrently with the other controllers' configuration.
+   *
+   * @return The result of the configuration.
+   */
+  public SparkMaxConfig.Result configureTurning() {
+    return turningConfig.apply(turningSparkMax);
+  }
+
+  /**
+   * Finishes setting up the module once both SPARKS MAX are configured: applies the status frames, zeroes the
+   * driving encoder and takes the first sensor snapshot.
+   */
+  public void finishConfiguration() {
+    // Status frame periods aren't saved to flash, so they're applied on every boot.
+    setStatusFrameProfile(ModuleConstants.DEFAULT_STATUS_FRAME_PROFILE);
+
+    drivingEncoder.setPosition(0);
+    refreshSensors();
+    desiredAngle = sensors.turningPositionRadians;
+  }
+
+  /**
+   * @return The name of this module, used for telemetry.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The driving SPARK MAX's PID controller, as shown on the dashboard.
+   */
+  public TunableSparkMaxPIDController getDrivingPIDController() {
+    return drivingTunable;
+  }
+
+  /**
+   * @return The turning SPARK MAX's PID controller, as shown on the dashboard.
+   */
+  public TunableSparkMaxPIDController getTurningPIDController() {
+    return turningTunable;
+  }
+
+  /**
+   * Enables or disables both of the module's loops. A disabled module stops its motors and ignores setpoints, e.g.
+   * after it failed and the drivetrain carries on without it. Both motors coast while the module is disabled, so the
+   * wheel rolls along instead of dragging the robot, and go back to their configured idle modes when it's enabled.
+   * The idle mode isn't burned to flash, so this waits on a CAN round trip per controller.
+   *
+   * @param enabled Whether the module is enabled.
+   */
+  public void setEnabled(boolean enabled) {
+    drivingTunable.setEnabled(enabled);
+    turningTunable.setEnabled(enabled);
+    if (sim != null) {
+      sim.setCoasting(!enabled);
+      if (!enabled) {
+        sim.setVoltage(0.0, sim.getTurningPosition());
+      }
+    } else {
+      drivingSparkMax.setIdleMode(enabled ? ModuleConstants.DRIVING_MOTOR_IDLE_MODE : IdleMode.kCoast);
+      turningSparkMax.setIdleMode(enabled ? ModuleConstants.TURNING_MOTOR_IDLE_MODE : IdleMode.kCoast);
+    }
+  }
+
+  /**
+   * Changes the driving SPARK MAX's smart current limit on the fly. The limit isn't burned to flash, so the
+   * configured limit is back after a reboot. This waits on a CAN round trip, so it shouldn't be called from the
+   * main robot loop.
+   *
+   * @param amps The current limit, in amps.
+   */
+  public void setDrivingCurrentLimit(int amps) {
+    drivingCurrentLimit = amps;
+    if (sim != null) {
+      sim.setDrivingCurrentLimit(amps);
+    } else {
+      drivingSparkMax.setSmartCurrentLimit(amps);
+    }
+  }
+
+  /**
+   * @return The driving SPARK MAX's current smart current limit, in amps.
+   */
+  public int getDrivingCurrentLimit() {
+    return drivingCurrentLimit;
+  }
+
+  /**
+   * Returns the turning motor's own speed, from the NEO 550's built-in encoder rather than the ThroughBore. This
+   * comes from the controller's periodic status frame, so reading it doesn't wait on CAN.
+   *
+   * @return The turning motor's speed, in RPM.
+   */
+  public double getTurningMotorVelocity() {
+    if (sim != null) {
+      return sim.getTurningMotorVelocity();
+    }
+    return turningMotorEncoder.getVelocity();
+  }
+
+  /**
+   * Returns the faults one of the module's SPARKS MAX is reporting right now. These come from the controller's
+   * periodic status frame, so reading them doesn't wait on CAN. Always 0 in simulation.
+   *
+   * @param turning Whether to read the turning SPARK MAX, rather than the driving one.
+   * @return The active faults, as a bit field indexed by {@link CANSparkMax.FaultID#value}.
+   */
+  public short getFaults(boolean turning) {
+    if (sim != null) {
+      return 0;
+    }
+    return (turning ? turningSparkMax : drivingSparkMax).getFaults();
+  }
+
+  /**
+   * Returns the sticky faults of one of the module's SPARKS MAX, i.e. every fault seen since they were last cleared,
+   * which can be from a previous session. These come from the controller's periodic status frame, so reading them
+   * doesn't wait on CAN. Always 0 in simulation.
+   *
+   * @param turning Whether to read the turning SPARK MAX, rather than the driving one.
+   * @return The sticky faults, as a bit field indexed by {@link CANSparkMax.FaultID#value}.
+   */
+  public short getStickyFaults(boolean turning) {
+    if (sim != null) {
+      return 0;
+    }
+    return (turning ? turningSparkMax : drivingSparkMax).getStickyFaults();
+  }
+
+  /**
+   * Returns the result of the last call made to one of the module's SPARKS MAX, e.g. the setpoint sent this cycle.
+   * Always {@link REVLibError#kOk} in simulation.
+   *
+   * @param turning Whether to read the turning SPARK MAX, rather than the driving one.
+   * @return The last error.
+   */
+  public REVLibError getLastError(boolean turning) {
+    if (sim != null) {
+      return REVLibError.kOk;
+    }
+    return (turning ? turningSparkMax : drivingSparkMax).getLastError();
+  }
+
+  /** Clears the sticky faults of both SPARKS MAX. */
+  public void clearFaults() {
+    if (sim == null) {
+      drivingSparkMax.clearFaults();
+      turningSparkMax.clearFaults();
+    }
+  }
+
+  /**
+   * Applies the periodic status frame periods of the given profile to both SPARKS MAX.
+   *
+   * @param profile The profile to apply.
+   */
+  public void setStatusFrameProfile(StatusFrameProfile profile) {
+    for (int i = 0; i < STATUS_FRAMES.length; i++) {
+      drivingSparkMax.setPeriodicFramePeriod(STATUS_FRAMES[i], profile.drivingPeriodsMs[i]);
+      turningSparkMax.setPeriodicFramePeriod(STATUS_FRAMES[i], profile.turningPeriodsMs[i]);
+    }
+  }
+
+  /**
+   * Reads the motor signals into the module's telemetry array. Every signal is read at most once per call, and the
+   * slower-changing ones can be skipped to save CAN traffic; skipped entries keep their last value.
+   *
+   * @param readOutputs     Whether to read the applied outputs, angle and current.
+   * @param readTemperature Whether to read the motor temperatures.
+   */
+  public void sampleTelemetry(boolean readOutputs, boolean readTemperature) {
+    if (readOutputs) {
+      if (sim != null) {
+        telemetry[TELEMETRY_DRIVING_APPLIED_OUTPUT] = sim.getDrivingAppliedOutput();
+        telemetry[TELEMETRY_DRIVING_CURRENT] = sim.getDrivingCurrent();
+        telemetry[TELEMETRY_TURNING_APPLIED_OUTPUT] = sim.getTurningAppliedOutput();
+        telemetry[TELEMETRY_TURNING_CURRENT] = sim.getTurningCurrent();
+      } else {
+        telemetry[TELEMETRY_DRIVING_APPLIED_OUTPUT] = drivingSparkMax.getAppliedOutput();
+        telemetry[TELEMETRY_DRIVING_CURRENT] = drivingSparkMax.getOutputCurrent();
+        telemetry[TELEMETRY_TURNING_APPLIED_OUTPUT] = turningSparkMax.getAppliedOutput();
+        telemetry[TELEMETRY_TURNING_CURRENT] = turningSparkMax.getOutputCurrent();
+      }
+      synchronized (sensors) {
+        telemetry[TELEMETRY_RELATIVE_ANGLE] = Math.toDegrees(sensors.turningPositionRadians - chassisAngularOffset);
+      }
+      telemetry[TELEMETRY_DESIRED_SPEED] = desiredSpeed;
+      telemetry[TELEMETRY_DESIRED_ANGLE] = Math.toDegrees(desiredAngle);
+    }
+
+    if (readTemperature) {
+      telemetry[TELEMETRY_DRIVING_TEMPERATURE] = drivingSparkMax.getMotorTemperature();
+      telemetry[TELEMETRY_TURNING_TEMPERATURE] = turningSparkMax.getMotorTemperature();
+    }
+  }
+
+  /**
+   * Returns the telemetry array last filled by {@link #sampleTelemetry(boolean, boolean)}. The array is reused, so
+   * callers shouldn't hold on to it.
+   *
+   * @return The telemetry array, indexed by the TELEMETRY_ constants.
+   */
+  public double[] getTelemetry() {
+    return telemetry;
   }
 
   /**
@@ -135,8 +419,10 @@ public class MAXSwerveModule {
   public SwerveModuleState getState() {
     // Apply chassis angular offset to the encoder position to get the position
     // relative to the chassis.
-    return new SwerveModuleState(drivingEncoder.getVelocity(),
-            new Rotation2d(turningEncoder.getPosition() - chassisAngularOffset));
+    synchronized (sensors) {
+      return new SwerveModuleState(sensors.drivingVelocityMetersPerSecond,
+              new Rotation2d(sensors.turningPositionRadians - chassisAngularOffset));
+    }
   }
 
   /**
@@ -147,9 +433,67 @@ public class MAXSwerveModule {
   public SwerveModulePosition getPosition() {
     // Apply chassis angular offset to the encoder position to get the position
     // relative to the chassis.
-    return new SwerveModulePosition(
-            drivingEncoder.getPosition(),
-            new Rotation2d(turningEncoder.getPosition() - chassisAngularOffset));
+    synchronized (sensors) {
+      return new SwerveModulePosition(
+              sensors.drivingPositionMeters,
+              new Rotation2d(sensors.turningPositionRadians - chassisAngularOffset));
+    }
+  }
+
+  /**
+   * Writes the current position of the module into an existing {@link SwerveModulePosition}, so callers can reuse
+   * one instance per module instead of allocating a new one every sample. Rotation2d is immutable, so the angle is
+   * only replaced when the turning encoder reading has changed; otherwise this doesn't allocate.
+   *
+   * @param position The position to update.
+   */
+  public void updatePosition(SwerveModulePosition position) {
+    synchronized (sensors) {
+      position.distanceMeters = sensors.drivingPositionMeters;
+      final double angle = sensors.turningPositionRadians - chassisAngularOffset;
+      if (position.angle.getRadians() != angle) {
+        position.angle = new Rotation2d(angle);
+      }
+    }
+  }
+
+  /**
+   * Samples the driving and turning encoders once, and stores the reading as the module's current snapshot. Every
+   * other getter reads from this snapshot, so odometry, optimization and telemetry all see the same sample without
+   * going back through REVLib.
+   */
+  public void refreshSensors() {
+    final double timestamp = Timer.getFPGATimestamp();
+    final double drivingPosition;
+    final double drivingVelocity;
+    final double turningPosition;
+    if (sim != null) {
+      drivingPosition = sim.getDrivingPosition();
+      drivingVelocity = sim.getDrivingVelocity();
+      turningPosition = sim.getTurningPosition();
+    } else {
+      drivingPosition = drivingEncoder.getPosition();
+      drivingVelocity = drivingEncoder.getVelocity();
+      turningPosition = turningEncoder.getPosition();
+    }
+
+    synchronized (sensors) {
+      sensors.timestampSeconds = timestamp;
+      sensors.drivingPositionMeters = drivingPosition;
+      sensors.drivingVelocityMetersPerSecond = drivingVelocity;
+      sensors.turningPositionRadians = turningPosition;
+    }
+  }
+
+  /**
+   * Copies the latest sensor snapshot into the given instance.
+   *
+   * @param snapshot The snapshot to copy into.
+   */
+  public void getSensors(SensorSnapshot snapshot) {
+    synchronized (sensors) {
+      snapshot.copyFrom(sensors);
+    }
   }
 
   /**
@@ -158,20 +502,98 @@ public class MAXSwerveModule {
    * @param desiredState Desired state with speed and angle.
    */
   public void setDesiredState(SwerveModuleState desiredState) {
+    setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getRadians());
+  }
+
+  /**
+   * Sets the desired state for the module without allocating. The driving motor gets a feedforward from the
+   * kS/kV/kA model, in volts, for the desired speed and the acceleration implied by the previous desired speed, and
+   * the SPARK MAX PID only corrects the remaining error.
+   *
+   * @param speedMetersPerSecond Desired speed of the wheel.
+   * @param angleRadians         Desired angle of the module relative to the chassis.
+   */
+  public void setDesiredState(double speedMetersPerSecond, double angleRadians) {
+    final double currentTime = Timer.getFPGATimestamp();
+    final double dt = currentTime - desiredTime;
+    final double acceleration = dt > 0 && dt < MAX_SETPOINT_PERIOD
+            ? (speedMetersPerSecond - desiredSpeed) / dt
+            : 0.0;
+
     // Apply chassis angular offset to the desired state.
-    SwerveModuleState correctedDesiredState = new SwerveModuleState();
-    correctedDesiredState.speedMetersPerSecond = desiredState.speedMetersPerSecond;
-    correctedDesiredState.angle = desiredState.angle.plus(Rotation2d.fromRadians(chassisAngularOffset));
+    double optimizedSpeed = speedMetersPerSecond;
+    double optimizedAngle = angleRadians + chassisAngularOffset;
 
     // Optimize the reference state to avoid spinning further than 90 degrees.
-    SwerveModuleState optimizedDesiredState = SwerveModuleState.optimize(correctedDesiredState,
-            new Rotation2d(turningEncoder.getPosition()));
+    final double turningPosition;
+    synchronized (sensors) {
+      turningPosition = sensors.turningPositionRadians;
+    }
+    final boolean reversed = Math.abs(MathUtil.angleModulus(optimizedAngle - turningPosition)) > Math.PI / 2;
+    if (reversed) {
+      optimizedSpeed = -optimizedSpeed;
+      optimizedAngle += Math.PI;
+    }
+    final double feedforwardVolts = drivingFeedforward.calculate(
+            optimizedSpeed, reversed ? -acceleration : acceleration);
 
     // Command driving and turning SPARKS MAX towards their respective setpoints.
-    drivingPIDController.setReference(optimizedDesiredState.speedMetersPerSecond, CANSparkMax.ControlType.kVelocity);
-    turningPIDController.setReference(optimizedDesiredState.angle.getRadians(), CANSparkMax.ControlType.kPosition);
+    final double turningSetpoint = MathUtil.inputModulus(optimizedAngle, 0, 2 * Math.PI);
+    final boolean drivingSent = drivingTunable.setReference(
+            optimizedSpeed, CANSparkMax.ControlType.kVelocity, 0, feedforwardVolts, ArbFFUnits.kVoltage);
+    final boolean turningSent = turningTunable.setReference(turningSetpoint, CANSparkMax.ControlType.kPosition);
+    if (sim != null) {
+      if (drivingSent) {
+        sim.setReference(optimizedSpeed, feedforwardVolts,
+                turningSent ? turningSetpoint : sim.getTurningPosition());
+      } else {
+        sim.setVoltage(0.0, turningSent ? turningSetpoint : sim.getTurningPosition());
+      }
+    }
+
+    this.desiredSpeed = speedMetersPerSecond;
+    this.desiredAngle = angleRadians;
+    this.desiredTime = currentTime;
+  }
+
+  /**
+   * Drives the module open loop for characterization: the wheel points straight forward and the driving motor gets
+   * the given voltage, bypassing the velocity loop and feedforward.
+   *
+   * @param volts The voltage to apply to the driving motor.
+   */
+  public void runCharacterization(double volts) {
+    final double turningSetpoint = MathUtil.inputModulus(chassisAngularOffset, 0, 2 * Math.PI);
+    final boolean drivingSent = drivingTunable.setReference(volts, CANSparkMax.ControlType.kVoltage);
+    final boolean turningSent = turningTunable.setReference(turningSetpoint, CANSparkMax.ControlType.kPosition);
+    if (sim != null) {
+      sim.setVoltage(drivingSent ? volts : 0.0, turningSent ? turningSetpoint : sim.getTurningPosition());
+    }
+
+    this.desiredSpeed = 0.0;
+    this.desiredAngle = 0.0;
+    this.desiredTime = Timer.getFPGATimestamp();
+  }
+
+  /**
+   * @return The last requested speed, in meters per second.
+   */
+  public double getDesiredSpeed() {
+    return desiredSpeed;
+  }
+
+  /**
+   * @return The last requested angle relative to the chassis, in radians.
+   */
+  public double getDesiredAngle() {
+    return desiredAngle;
+  }
 
-    this.desiredState = desiredState;
+  /**
+   * @return The chassis angular offset of the module, in radians.
+   */
+  public double getChassisAngularOffset() {
+    return chassisAngularOffset;
   }
 
   /**
@@ -179,5 +601,49 @@ public class MAXSwerveModule {
    */
   public void resetEncoders() {
     drivingEncoder.setPosition(0);
+    if (sim != null) {
+      sim.resetDrivingPosition();
+    }
+    refreshSensors();
+  }
+
+  /**
+   * Advances the module's physics model. Does nothing on the robot.
+   *
+   * @param dtSeconds The time step, in seconds.
+   */
+  public void simulationPeriodic(double dtSeconds) {
+    if (sim != null) {
+      sim.update(dtSeconds);
+    }
+  }
+
+  /**
+   * Returns the simulated state of the module over the ground, which differs from {@link #getState()} when the
+   * wheel is slipping. Only available in simulation.
+   *
+   * @return The ground truth state of the module, relative to the chassis.
+   */
+  public SwerveModuleState getSimulatedGroundState() {
+    return new SwerveModuleState(sim.getGroundVelocity(),
+            new Rotation2d(sim.getTurningPosition() - chassisAngularOffset));
+  }
+
+  /**
+   * A timestamped sample of a module's encoders. The turning position is the raw absolute encoder reading, without
+   * the chassis angular offset applied.
+   */
+  public static class SensorSnapshot {
+    public double timestampSeconds;
+    public double drivingPositionMeters;
+    public double drivingVelocityMetersPerSecond;
+    public double turningPositionRadians;
+
+    public void copyFrom(SensorSnapshot other) {
+      timestampSeconds = other.timestampSeconds;
+      drivingPositionMeters = other.drivingPositionMeters;
+      drivingVelocityMetersPerSecond = other.drivingVelocityMetersPerSecond;
+      turningPositionRadians = other.turningPositionRadians;
+    }
   }
 }
@@ -0,0 +1,223 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.SimConstants;
+
+/**
+ * Physics model of a MAXSwerve module for desktop simulation. It stands in for the SPARK MAX closed loop controllers
+ * using the gains in {@link ModuleConstants}, models the NEO driving motor pushing a quarter of the robot's mass, and
+ * lets the wheel break traction when the motor's force exceeds what friction can transmit. The encoders report the
+ * wheel, not the ground, so slip shows up in odometry just like on the real robot.
+ *
+ * <p>The model only advances when {@link #update(double)} is called, so it can be stepped faster than real time.
+ */
+public class MAXSwerveModuleSim {
+  private static final DCMotor DRIVING_MOTOR = DCMotor.getNEO(1);
+  private static final DCMotor TURNING_MOTOR = DCMotor.getNeo550(1);
+  private static final double NOMINAL_VOLTAGE = ModuleConstants.NOMINAL_VOLTAGE;
+  private static final double GRAVITY = 9.81;
+
+  private static final double WHEEL_RADIUS_METERS = ModuleConstants.WHEEL_DIAMETER_METERS / 2;
+  private static final double MODULE_MASS_KG = SimConstants.ROBOT_MASS_KG / 4;
+  private static final double MAX_TRACTION_FORCE = SimConstants.WHEEL_COEFFICIENT_OF_FRICTION * MODULE_MASS_KG * GRAVITY;
+  // The wheel's inertia expressed as an equivalent mass at the contact patch
+  private static final double WHEEL_EFFECTIVE_MASS_KG = SimConstants.WHEEL_MOI_KG_METERS_SQUARED
+          / (WHEEL_RADIUS_METERS * WHEEL_RADIUS_METERS);
+  // Below this difference between wheel and ground speed, the wheel grips again
+  private static final double SLIP_RECOVERY_METERS_PER_SECOND = 0.05;
+
+  private final DCMotorSim turningSim = new DCMotorSim(
+          TURNING_MOTOR, ModuleConstants.TURNING_MOTOR_REDUCTION, SimConstants.TURNING_MOI_KG_METERS_SQUARED);
+
+  private double drivingSetpoint = 0.0; // meters per second
+  private double drivingFeedforward = 0.0; // volts
+  private boolean drivingOpenLoop = false;
+  // Set from PowerManager's worker thread
+  private volatile double drivingCurrentLimit = ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT; // amps
+  private boolean coasting = false;
+  private double turningSetpoint = 0.0; // radians, in the absolute encoder's frame
+
+  private double wheelPosition = 0.0;
+  private double wheelVelocity = 0.0;
+  private double groundVelocity = 0.0;
+  private double drivingVoltage = 0.0;
+  private double drivingCurrent = 0.0;
+  private double turningVoltage = 0.0;
+  private boolean slipping = false;
+
+  /**
+   * Sets the closed loop setpoints, as they would've been sent to the SPARKS MAX.
+   *
+   * @param drivingVelocity    The driving velocity setpoint, in meters per second.
+   * @param drivingFeedforward The driving arbitrary feedforward, in volts.
+   * @param turningPosition    The turning position setpoint, in radians.
+   */
+  public void setReference(double drivingVelocity, double drivingFeedforward, double turningPosition) {
+    this.drivingSetpoint = drivingVelocity;
+    this.drivingFeedforward = drivingFeedforward;
+    this.drivingOpenLoop = false;
+    this.turningSetpoint = turningPosition;
+  }
+
+  /**
+   * Drives the driving motor open loop, as the SPARK MAX would in voltage control mode.
+   *
+   * @param drivingVoltage  The voltage to apply to the driving motor.
+   * @param turningPosition The turning position setpoint, in radians.
+   */
+  public void setVoltage(double drivingVoltage, double turningPosition) {
+    this.drivingFeedforward = drivingVoltage;
+    this.turningSetpoint = turningPosition;
+    this.drivingOpenLoop = true;
+  }
+
+  /**
+   * Lets both motors coast, as a SPARK MAX in coast idle mode would with no output. The driving motor's terminals are
+   * left open, so no current flows and the wheel rolls freely; the turning motor just gets no voltage.
+   *
+   * @param coasting Whether the motors coast.
+   */
+  public void setCoasting(boolean coasting) {
+    this.coasting = coasting;
+  }
+
+  /**
+   * Limits the driving motor's current, as the SPARK MAX's smart current limit would.
+   *
+   * @param amps The current limit, in amps.
+   */
+  public void setDrivingCurrentLimit(double amps) {
+    this.drivingCurrentLimit = amps;
+  }
+
+  /**
+   * Advances the model.
+   *
+   * @param dtSeconds The time step, in seconds.
+   */
+  public void update(double dtSeconds) {
+    // Turning: position PID with wrapping, like the SPARK MAX.
+    final double turningError = MathUtil.angleModulus(turningSetpoint - getTurningPosition());
+    turningVoltage = coasting ? 0.0 : MathUtil.clamp(ModuleConstants.TURNING_P * turningError,
+            ModuleConstants.TURNING_MIN_OUTPUT, ModuleConstants.TURNING_MAX_OUTPUT) * NOMINAL_VOLTAGE;
+    turningSim.setInputVoltage(turningVoltage);
+    turningSim.update(dtSeconds);
+
+    // Driving: velocity PID plus feedforward, held for the whole loop like a SPARK MAX status period. The battery is
+    // ideal, so voltage compensation has nothing to correct.
+    final double drivingFeedback = drivingOpenLoop ? 0.0 : (ModuleConstants.DRIVING_FF * drivingSetpoint
+            + ModuleConstants.DRIVING_P * (drivingSetpoint - wheelVelocity)) * NOMINAL_VOLTAGE;
+    drivingVoltage = MathUtil.clamp(drivingFeedforward + drivingFeedback, -NOMINAL_VOLTAGE, NOMINAL_VOLTAGE);
+
+    final double h = dtSeconds / SimConstants.PHYSICS_SUBSTEPS;
+    for (int i = 0; i < SimConstants.PHYSICS_SUBSTEPS; i++) {
+      final double motorSpeed = wheelVelocity / WHEEL_RADIUS_METERS * ModuleConstants.DRIVING_MOTOR_REDUCTION;
+      drivingCurrent = coasting ? 0.0 : MathUtil.clamp(DRIVING_MOTOR.getCurrent(motorSpeed, drivingVoltage),
+              -drivingCurrentLimit, drivingCurrentLimit);
+      final double wheelForce = DRIVING_MOTOR.getTorque(drivingCurrent)
+              * ModuleConstants.DRIVING_MOTOR_REDUCTION / WHEEL_RADIUS_METERS;
+
+      if (!slipping && Math.abs(wheelForce) > MAX_TRACTION_FORCE) {
+        slipping = true;
+      }
+
+      if (slipping) {
+        // Kinetic friction drags the robot along and resists the spinning wheel.
+        final double slip = wheelVelocity - groundVelocity;
+        final double friction = MAX_TRACTION_FORCE * (slip != 0.0 ? Math.signum(slip) : Math.signum(wheelForce));
+        groundVelocity += friction / MODULE_MASS_KG * h;
+        wheelVelocity += (wheelForce - friction) / WHEEL_EFFECTIVE_MASS_KG * h;
+
+        if (Math.abs(wheelVelocity - groundVelocity) < SLIP_RECOVERY_METERS_PER_SECOND
+                && Math.abs(wheelForce) <= MAX_TRACTION_FORCE) {
+          slipping = false;
+          wheelVelocity = groundVelocity;
+        }
+      } else {
+        // The wheel grips, so the motor pushes the module's share of the robot.
+        wheelVelocity += wheelForce / MODULE_MASS_KG * h;
+        groundVelocity = wheelVelocity;
+      }
+
+      wheelPosition += wheelVelocity * h;
+    }
+  }
+
+  /** Zeroes the simulated driving encoder. */
+  public void resetDrivingPosition() {
+    wheelPosition = 0.0;
+  }
+
+  /**
+   * @return The distance the wheel has turned through, as the driving encoder would report it, in meters.
+   */
+  public double getDrivingPosition() {
+    return wheelPosition;
+  }
+
+  /**
+   * @return The wheel's surface speed, as the driving encoder would report it, in meters per second.
+   */
+  public double getDrivingVelocity() {
+    return wheelVelocity;
+  }
+
+  /**
+   * @return The speed the module actually moves over the ground, in meters per second.
+   */
+  public double getGroundVelocity() {
+    return groundVelocity;
+  }
+
+  /**
+   * @return The module angle as the absolute encoder would report it, from 0 to 2*PI radians.
+   */
+  public double getTurningPosition() {
+    return MathUtil.inputModulus(turningSim.getAngularPositionRad(), 0, 2 * Math.PI);
+  }
+
+  /**
+   * @return The turning motor's speed, as its built-in encoder would report it, in RPM.
+   */
+  public double getTurningMotorVelocity() {
+    return turningSim.getAngularVelocityRPM() * ModuleConstants.TURNING_MOTOR_REDUCTION;
+  }
+
+  /**
+   * @return The current drawn by the driving motor, in amps.
+   */
+  public double getDrivingCurrent() {
+    return Math.abs(drivingCurrent);
+  }
+
+  /**
+   * @return The current drawn by the turning motor, in amps.
+   */
+  public double getTurningCurrent() {
+    return turningSim.getCurrentDrawAmps();
+  }
+
+  /**
+   * @return The driving motor's applied output, in duty cycle.
+   */
+  public double getDrivingAppliedOutput() {
+    return drivingVoltage / NOMINAL_VOLTAGE;
+  }
+
+  /**
+   * @return The turning motor's applied output, in duty cycle.
+   */
+  public double getTurningAppliedOutput() {
+    return turningVoltage / NOMINAL_VOLTAGE;
+  }
+
+  /**
+   * @return Whether the wheel has broken traction.
+   */
+  public boolean isSlipping() {
+    return slipping;
+  }
+}
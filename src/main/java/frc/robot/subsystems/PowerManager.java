@@ -0,0 +1,126 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.PowerConstants;
+import frc.shuffleboard.GlobalTab;
+import frc.utils.LoopProfiler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the drivetrain within what the battery can deliver, so a pushing match sags the robot's speed rather than
+ * browning out the roboRIO. It watches the battery voltage and the total current of the drivetrain motors (from the
+ * telemetry that's sampled anyway), and when either is past its limit it lowers the driving motors' current limits
+ * and the max speed {@link DriveSubsystem#drive} delivers.
+ *
+ * <p>Limiting applies immediately and lets off gradually. Setting a current limit is a blocking CAN round trip per
+ * controller, so the limits are written on a background thread instead of the robot loop. Every cycle's budget is
+ * appended to the data log under "/Power/Budget" as [battery voltage, drivetrain current, scale, driving current
+ * limit], and each change of the current limit is logged with its reason.
+ */
+public class PowerManager extends SubsystemBase {
+  private final DriveSubsystem drive;
+  private final MAXSwerveModule[] modules;
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("PowerManager.periodic()");
+  private final DoubleArrayLogEntry budgetEntry = new DoubleArrayLogEntry(DataLogManager.getLog(), "/Power/Budget");
+  private final double[] budget = new double[4];
+  private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+    final var thread = new Thread(runnable, "Power");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean applyingLimit = new AtomicBoolean(false);
+
+  private double voltage = RobotController.getBatteryVoltage(); // filtered
+  private double current = 0.0;
+  private double scale = 1.0;
+  private int drivingCurrentLimit = ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT;
+  private double lastLimitUpdate = 0.0;
+  private double lastTime = Timer.getFPGATimestamp();
+
+  public PowerManager(DriveSubsystem drive) {
+    this.drive = drive;
+    this.modules = drive.getModules();
+
+    GlobalTab.MATCH.addNumber("Power Scale", () -> scale);
+    GlobalTab.DEBUG.addNumber("Drivetrain Current (A)", () -> current);
+    GlobalTab.DEBUG.addNumber("Driving Current Limit (A)", () -> drivingCurrentLimit);
+  }
+
+  @Override public void periodic() {
+    periodicStage.start();
+
+    final double currentTime = Timer.getFPGATimestamp();
+    final double dt = currentTime - lastTime;
+    lastTime = currentTime;
+
+    // Single pole low pass, so a momentary dip doesn't throttle the drivetrain.
+    voltage += (RobotController.getBatteryVoltage() - voltage)
+            * (1.0 - Math.exp(-dt / PowerConstants.VOLTAGE_FILTER_TIME_CONSTANT));
+    current = 0.0;
+    for (final var module : modules) {
+      final double[] telemetry = module.getTelemetry();
+      current += telemetry[MAXSwerveModule.TELEMETRY_DRIVING_CURRENT] + telemetry[MAXSwerveModule.TELEMETRY_TURNING_CURRENT];
+    }
+
+    // 1 when there's headroom, down to 0 at the floor voltage or in proportion to how far over budget the drivetrain is.
+    final double voltageTarget = MathUtil.clamp((voltage - PowerConstants.LIMIT_FLOOR_VOLTAGE)
+            / (PowerConstants.LIMIT_START_VOLTAGE - PowerConstants.LIMIT_FLOOR_VOLTAGE), 0.0, 1.0);
+    final double currentTarget = current > PowerConstants.DRIVETRAIN_CURRENT_BUDGET
+            ? scale * PowerConstants.DRIVETRAIN_CURRENT_BUDGET / current
+            : 1.0;
+    final double target = Math.min(voltageTarget, currentTarget);
+    scale = target < scale ? target : Math.min(target, scale + PowerConstants.RECOVERY_RATE * dt);
+
+    drive.setSpeedScale(PowerConstants.MIN_SPEED_SCALE + (1.0 - PowerConstants.MIN_SPEED_SCALE) * scale);
+    updateCurrentLimit(currentTime, voltageTarget < currentTarget);
+
+    budget[0] = voltage;
+    budget[1] = current;
+    budget[2] = scale;
+    budget[3] = drivingCurrentLimit;
+    budgetEntry.append(budget);
+
+    periodicStage.stop();
+  }
+
+  /**
+   * Moves the driving current limit towards the current scale, in steps and no more often than the update period,
+   * since every change is a CAN round trip per controller. The new limit is written on the worker thread; while a
+   * write is still in flight, the next change waits for it.
+   */
+  private void updateCurrentLimit(double currentTime, boolean voltageLimited) {
+    final int range = ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT - PowerConstants.MIN_DRIVING_CURRENT_LIMIT;
+    final int steps = (int) Math.round(range * scale / PowerConstants.CURRENT_LIMIT_STEP);
+    final int limit = Math.min(ModuleConstants.DRIVING_MOTOR_CURRENT_LIMIT,
+            PowerConstants.MIN_DRIVING_CURRENT_LIMIT + steps * PowerConstants.CURRENT_LIMIT_STEP);
+    if (limit == drivingCurrentLimit
+            || currentTime - lastLimitUpdate < PowerConstants.CURRENT_LIMIT_UPDATE_PERIOD
+            || !applyingLimit.compareAndSet(false, true)) {
+      return;
+    }
+
+    DataLogManager.log(String.format("Power: driving current limit %d -> %d A (battery %.2f V, drivetrain %.0f A, %s)",
+            drivingCurrentLimit, limit, voltage, current,
+            scale >= 1.0 ? "recovered" : voltageLimited ? "low voltage" : "over current budget"));
+    worker.execute(() -> {
+      try {
+        for (final var module : modules) {
+          module.setDrivingCurrentLimit(limit);
+        }
+      } finally {
+        applyingLimit.set(false);
+      }
+    });
+    drivingCurrentLimit = limit;
+    lastLimitUpdate = currentTime;
+  }
+}
@@ -0,0 +1,56 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.VisionConstants;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Synthetic vision source for simulation. It captures the simulated robot's ground truth pose at a fixed rate, adds
+ * Gaussian noise, and hands it to {@link DriveSubsystem#addVisionMeasurement} only after a processing latency has
+ * passed, stamped with the capture time, like a real camera pipeline would.
+ */
+public class SimulatedVision extends SubsystemBase {
+  private final DriveSubsystem drive;
+  // Seeded, so a simulation run is repeatable
+  private final Random random = new Random(4546);
+  private final ArrayDeque<Measurement> pending = new ArrayDeque<>();
+  private double lastCaptureTime = Double.NEGATIVE_INFINITY;
+
+  public SimulatedVision(DriveSubsystem drive) {
+    this.drive = drive;
+  }
+
+  @Override public void simulationPeriodic() {
+    final double now = Timer.getFPGATimestamp();
+
+    if (now - lastCaptureTime >= VisionConstants.SIM_PERIOD_SECONDS) {
+      lastCaptureTime = now;
+      final var truth = drive.getSimulatedPose();
+      pending.addLast(new Measurement(now, new Pose2d(
+              truth.getX() + random.nextGaussian() * VisionConstants.SIM_TRANSLATION_NOISE_METERS,
+              truth.getY() + random.nextGaussian() * VisionConstants.SIM_TRANSLATION_NOISE_METERS,
+              truth.getRotation().plus(new Rotation2d(
+                      random.nextGaussian() * VisionConstants.SIM_ROTATION_NOISE_RADIANS)))));
+    }
+
+    while (!pending.isEmpty() && now - pending.peekFirst().captureTime >= VisionConstants.SIM_LATENCY_SECONDS) {
+      final var measurement = pending.removeFirst();
+      drive.addVisionMeasurement(measurement.pose, measurement.captureTime);
+    }
+  }
+
+  private static class Measurement {
+    private final double captureTime;
+    private final Pose2d pose;
+
+    private Measurement(double captureTime, Pose2d pose) {
+      this.captureTime = captureTime;
+      this.pose = pose;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.StringArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.TelemetryConstants;
+import frc.shuffleboard.GlobalTab;
+import frc.utils.LoopProfiler;
+
+/**
+ * Reads the motor signals of every {@link MAXSwerveModule} once per publish cycle and publishes them as a single
+ * batched NetworkTables array per module, instead of having Shuffleboard poll each signal over CAN separately. The
+ * same arrays are appended to the data log under "/Telemetry/".
+ */
+public class TelemetrySubsystem extends SubsystemBase {
+  public enum Verbosity {
+    /** Reduced publish rate, to keep CAN and NetworkTables traffic down during matches. */
+    MATCH,
+    /** Full publish rate, for tuning and debugging. */
+    DEBUG
+  }
+
+  private final MAXSwerveModule[] modules;
+  private final DoubleArrayPublisher[] publishers;
+  private final DoubleArrayLogEntry[] logEntries;
+  private final StringArrayPublisher fieldsPublisher;
+  private final SendableChooser<Verbosity> verbosityChooser = new SendableChooser<>();
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("TelemetrySubsystem.periodic()");
+  private int cycle = 0;
+  private double canUtilization = 0.0;
+
+  public TelemetrySubsystem(MAXSwerveModule... modules) {
+    this.modules = modules;
+    this.publishers = new DoubleArrayPublisher[modules.length];
+    this.logEntries = new DoubleArrayLogEntry[modules.length];
+
+    final NetworkTable table = NetworkTableInstance.getDefault().getTable("Telemetry");
+    final DataLog log = DataLogManager.getLog();
+    for (int i = 0; i < modules.length; i++) {
+      publishers[i] = table.getDoubleArrayTopic(modules[i].getName()).publish();
+      logEntries[i] = new DoubleArrayLogEntry(log, "/Telemetry/" + modules[i].getName());
+    }
+    new StringArrayLogEntry(log, "/Telemetry/Fields").append(MAXSwerveModule.TELEMETRY_FIELDS);
+
+    // The module arrays are positional, so publish the field names once for dashboards to label them with.
+    fieldsPublisher = table.getStringArrayTopic("Fields").publish();
+    fieldsPublisher.set(MAXSwerveModule.TELEMETRY_FIELDS);
+
+    verbosityChooser.setDefaultOption("Match", Verbosity.MATCH);
+    verbosityChooser.addOption("Debug", Verbosity.DEBUG);
+    GlobalTab.DEBUG.add("Telemetry Verbosity", verbosityChooser);
+    GlobalTab.DEBUG.addNumber("CAN Utilization (%)", () -> canUtilization);
+  }
+
+  @Override public void periodic() {
+    periodicStage.start();
+
+    final int outputPeriod = verbosityChooser.getSelected() == Verbosity.DEBUG
+            ? TelemetryConstants.DEBUG_OUTPUT_PERIOD_CYCLES
+            : TelemetryConstants.MATCH_OUTPUT_PERIOD_CYCLES;
+    final boolean readOutputs = cycle % outputPeriod == 0;
+    final boolean readTemperature = cycle % TelemetryConstants.TEMPERATURE_PERIOD_CYCLES == 0;
+    cycle++;
+
+    if (readOutputs) {
+      canUtilization = RobotController.getCANStatus().percentBusUtilization * 100;
+    }
+
+    if (readOutputs || readTemperature) {
+      for (int i = 0; i < modules.length; i++) {
+        modules[i].sampleTelemetry(readOutputs, readTemperature);
+        publishers[i].set(modules[i].getTelemetry());
+        logEntries[i].append(modules[i].getTelemetry());
+      }
+    }
+
+    periodicStage.stop();
+  }
+}
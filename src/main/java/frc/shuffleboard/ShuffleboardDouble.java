@@ -1,20 +1,37 @@
 package frc.shuffleboard;
 
 import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableType;
 import edu.wpi.first.wpilibj.shuffleboard.BuiltInWidgets;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj.shuffleboard.SimpleWidget;
 
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * A number on a Shuffleboard tab. The value is cached locally and updated by a NetworkTables listener when it
+ * changes, so {@link #get()} is a field read rather than a NetworkTables lookup.
+ */
 public class ShuffleboardDouble implements ShuffleboardValue {
   protected static final double DEFAULT_VALUE = 0.0;
   private final SimpleWidget widget;
-  private final double def;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+  private volatile double value;
 
   public ShuffleboardDouble(ShuffleboardTab tab, String name, double def) {
     this.widget = tab.add(name, def);
-    this.def = def;
+    this.value = def;
+    NetworkTableInstance.getDefault().addListener(widget.getEntry(), EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+            event -> {
+              if (event.valueData.value.getType() == NetworkTableType.kDouble) {
+                update(event.valueData.value.getDouble());
+              }
+            });
   }
 
   public ShuffleboardDouble(ShuffleboardTab tab, String name) {
@@ -45,11 +62,25 @@ public class ShuffleboardDouble implements ShuffleboardValue {
   }
 
   public double get() {
-    return widget.getEntry().getDouble(def);
+    return value;
   }
 
   public void set(double value) {
     widget.getEntry().setDouble(value);
+    update(value);
+  }
+
+  @Override public void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  private synchronized void update(double newValue) {
+    if (Double.compare(newValue, value) != 0) {
+      value = newValue;
+      for (final var listener : listeners) {
+        listener.run();
+      }
+    }
   }
 
   @Override public GenericEntry getRaw() {
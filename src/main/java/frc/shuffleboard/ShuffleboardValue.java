@@ -4,4 +4,14 @@ import edu.wpi.first.networktables.GenericEntry;
 
 public interface ShuffleboardValue {
   GenericEntry getRaw();
-}
\ No newline at end of file
+
+  /**
+   * Registers a listener that's called once whenever the value changes, after the cached value has been updated. A
+   * change from the dashboard runs it on the NetworkTables listener thread, and a change from code runs it on the
+   * thread that called {@code set()}, before {@code set()} returns. So listeners may run on either thread, but never
+   * concurrently.
+   *
+   * @param listener The listener.
+   */
+  void addListener(Runnable listener);
+}
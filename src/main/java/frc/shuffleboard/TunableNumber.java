@@ -0,0 +1,71 @@
+package frc.shuffleboard;
+
+import edu.wpi.first.networktables.DoubleEntry;
+
+/**
+ * A number that can be tuned from the dashboard, created by {@link TunableStore#number(String, double)}. The value is
+ * cached locally and only updated when NetworkTables reports a change, so {@link #get()} is a field read.
+ */
+public class TunableNumber {
+  private final String key;
+  private final double defaultValue;
+  private final DoubleEntry entry;
+  private volatile double value;
+  private volatile long version = 0;
+
+  TunableNumber(String key, double defaultValue, double initialValue, DoubleEntry entry) {
+    this.key = key;
+    this.defaultValue = defaultValue;
+    this.value = initialValue;
+    this.entry = entry;
+  }
+
+  /**
+   * @return The key of this number in the store.
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return The value in code, used when nothing has been persisted.
+   */
+  public double getDefault() {
+    return defaultValue;
+  }
+
+  /**
+   * @return The current value.
+   */
+  public double get() {
+    return value;
+  }
+
+  /**
+   * Sets the value, publishing it to the dashboard and persisting it.
+   *
+   * @param value The new value.
+   */
+  public void set(double value) {
+    entry.set(value);
+    update(value);
+  }
+
+  /**
+   * Returns a counter that goes up every time the value changes, so callers can cheaply check whether it changed
+   * since they last looked.
+   *
+   * @return The version of the value.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  synchronized void update(double newValue) {
+    if (Double.compare(newValue, value) != 0) {
+      value = newValue;
+      version++;
+      TunableStore.scheduleSave();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package frc.shuffleboard;
+
+import com.revrobotics.SparkMaxPIDController;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * PIDF gains shared by a group of SPARK MAX PID controllers, e.g. every module's driving controller, tunable through
+ * the {@link TunableStore}. When any gain changes, all of them are written to every controller in one batch, on the
+ * store's background thread, since each write is a blocking CAN round trip. The gains aren't burned to flash; the
+ * store persists them instead and they're reapplied on boot.
+ */
+public class TunableSparkMaxGains {
+  private final SparkMaxPIDController[] controllers;
+  private final TunableNumber p;
+  private final TunableNumber i;
+  private final TunableNumber d;
+  private final TunableNumber ff;
+  private final AtomicBoolean applying = new AtomicBoolean(false);
+  private long appliedVersion;
+
+  /**
+   * @param name        The name of the group, used as the prefix of the tunable keys.
+   * @param p           The default proportional gain.
+   * @param i           The default integral gain.
+   * @param d           The default derivative gain.
+   * @param ff          The default velocity feedforward gain.
+   * @param controllers The controllers to apply the gains to.
+   */
+  public TunableSparkMaxGains(String name, double p, double i, double d, double ff,
+                              SparkMaxPIDController... controllers) {
+    this.controllers = controllers;
+    this.p = TunableStore.number(name + "/P", p);
+    this.i = TunableStore.number(name + "/I", i);
+    this.d = TunableStore.number(name + "/D", d);
+    this.ff = TunableStore.number(name + "/FF", ff);
+
+    // The controllers were configured with the defaults, so only persisted values need applying.
+    final boolean isDefault = this.p.get() == p && this.i.get() == i && this.d.get() == d && this.ff.get() == ff;
+    appliedVersion = isDefault ? getVersion() : -1;
+  }
+
+  /**
+   * Starts applying the gains if any of them changed since they were last applied. This never blocks, so it's meant
+   * to be called every cycle.
+   */
+  public void update() {
+    final long version = getVersion();
+    if (version == appliedVersion || !applying.compareAndSet(false, true)) {
+      return;
+    }
+
+    appliedVersion = version;
+    final double pValue = p.get();
+    final double iValue = i.get();
+    final double dValue = d.get();
+    final double ffValue = ff.get();
+    TunableStore.runInBackground(() -> {
+      try {
+        for (final var controller : controllers) {
+          controller.setP(pValue);
+          controller.setI(iValue);
+          controller.setD(dValue);
+          controller.setFF(ffValue);
+        }
+      } finally {
+        applying.set(false);
+      }
+    });
+  }
+
+  public TunableNumber getP() {
+    return p;
+  }
+
+  public TunableNumber getI() {
+    return i;
+  }
+
+  public TunableNumber getD() {
+    return d;
+  }
+
+  public TunableNumber getFF() {
+    return ff;
+  }
+
+  private long getVersion() {
+    return p.getVersion() + i.getVersion() + d.getVersion() + ff.getVersion();
+  }
+}
@@ -1,28 +1,215 @@
 package frc.shuffleboard;
 
+import com.revrobotics.CANSparkMax.ControlType;
 import com.revrobotics.SparkMaxPIDController;
+import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.function.BooleanConsumer;
 import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.Timer;
+
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
 
 /**
  * Wraps [SparkMaxPIDController] because it isn't natively supported by Shuffleboard.
+ *
+ * <p>References should be sent through {@link #setReference} rather than the controller itself, so the widget can
+ * show the last setpoint and control type, and so the loop can be disabled from the dashboard. The measurement comes
+ * from a supplier, e.g. a cached sensor snapshot, rather than reading the SPARK MAX, and the measurement and error are
+ * only refreshed once per publish period.
+ *
+ * <p>The setpoint and enable toggle edited on the dashboard can be routed through the controller's owner with
+ * {@link #withReferenceHandler} and {@link #withEnabledHandler}, so it can add its feedforward and keep track of
+ * which loops are enabled.
  */
 public class TunableSparkMaxPIDController implements Sendable {
+  private static final double DEFAULT_PUBLISH_PERIOD = 0.1; // seconds
+
   private final SparkMaxPIDController child;
+  private final DoubleSupplier measurement;
+  private volatile TunableSparkMaxGains gains;
+  private volatile DoubleConsumer referenceHandler;
+  private volatile BooleanConsumer enabledHandler;
+  private double publishPeriod = DEFAULT_PUBLISH_PERIOD;
+  private boolean positionWrappingEnabled = false;
+  private double positionWrappingRange = 0.0;
+
+  private volatile double reference = 0.0;
+  private volatile ControlType controlType = ControlType.kDutyCycle;
+  private volatile boolean enabled = true;
+
+  private double lastPublishTime = Double.NEGATIVE_INFINITY;
+  private double publishedMeasurement = 0.0;
+  private double publishedError = 0.0;
 
   public TunableSparkMaxPIDController(SparkMaxPIDController child) {
+    this(child, null);
+  }
+
+  /**
+   * @param child       The controller to wrap.
+   * @param measurement Supplies the measured value the loop controls, in the same units as the reference, or null.
+   */
+  public TunableSparkMaxPIDController(SparkMaxPIDController child, DoubleSupplier measurement) {
     this.child = child;
+    this.measurement = measurement;
+  }
+
+  /**
+   * Edits the given gains instead of the controller's, so changes are persisted and applied to the whole group. This
+   * also stops the widget from reading the gains back over CAN.
+   */
+  public TunableSparkMaxPIDController withGains(TunableSparkMaxGains gains) {
+    this.gains = gains;
+    return this;
+  }
+
+  /**
+   * Routes setpoints entered on the dashboard through the owner, e.g. so it can add its arbitrary feedforward, instead
+   * of sending them to the controller as is.
+   */
+  public TunableSparkMaxPIDController withReferenceHandler(DoubleConsumer handler) {
+    this.referenceHandler = handler;
+    return this;
+  }
+
+  /**
+   * Routes the dashboard's enable toggle through the owner, e.g. so it can keep track of which loops are enabled,
+   * instead of enabling or disabling the controller directly.
+   */
+  public TunableSparkMaxPIDController withEnabledHandler(BooleanConsumer handler) {
+    this.enabledHandler = handler;
+    return this;
+  }
+
+  /**
+   * Sets how often the measurement and error are refreshed on the dashboard.
+   *
+   * @param seconds The period, in seconds.
+   */
+  public TunableSparkMaxPIDController withPublishPeriod(double seconds) {
+    this.publishPeriod = seconds;
+    return this;
+  }
+
+  /**
+   * Wraps the published error the same way the SPARK MAX wraps position errors.
+   */
+  public TunableSparkMaxPIDController withPositionWrapping(double minInput, double maxInput) {
+    this.positionWrappingEnabled = true;
+    this.positionWrappingRange = maxInput - minInput;
+    return this;
+  }
+
+  /**
+   * @return The wrapped controller.
+   */
+  public SparkMaxPIDController getController() {
+    return child;
+  }
+
+  /**
+   * Sends a reference to the controller, unless it's disabled. The reference is remembered either way.
+   *
+   * @return Whether the reference was sent.
+   */
+  public boolean setReference(double value, ControlType controlType) {
+    return setReference(value, controlType, 0, 0.0, ArbFFUnits.kVoltage);
+  }
+
+  /**
+   * Sends a reference to the controller, unless it's disabled. The reference is remembered either way.
+   *
+   * @return Whether the reference was sent.
+   */
+  public boolean setReference(double value, ControlType controlType, int pidSlot, double arbFeedforward,
+                              ArbFFUnits arbFFUnits) {
+    this.reference = value;
+    this.controlType = controlType;
+    if (!enabled) {
+      return false;
+    }
+    child.setReference(value, controlType, pidSlot, arbFeedforward, arbFFUnits);
+    return true;
+  }
+
+  /**
+   * Enables or disables the loop. A disabled loop stops its motor and ignores references until it's enabled again.
+   *
+   * @param enabled Whether the loop is enabled.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      child.setReference(0.0, ControlType.kDutyCycle);
+    }
+  }
+
+  /**
+   * @return Whether the loop is enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return The last reference, whether or not it was sent.
+   */
+  public double getReference() {
+    return reference;
+  }
+
+  /**
+   * @return The control type of the last reference.
+   */
+  public ControlType getControlType() {
+    return controlType;
+  }
+
+  private void refreshPublished() {
+    final double now = Timer.getFPGATimestamp();
+    if (measurement == null || now - lastPublishTime < publishPeriod) {
+      return;
+    }
+    lastPublishTime = now;
+    publishedMeasurement = measurement.getAsDouble();
+    publishedError = reference - publishedMeasurement;
+    if (positionWrappingEnabled && controlType == ControlType.kPosition) {
+      publishedError = MathUtil.inputModulus(publishedError, -positionWrappingRange / 2, positionWrappingRange / 2);
+    }
   }
 
   @Override public void initSendable(SendableBuilder builder) {
     builder.setSmartDashboardType("PIDController");
-    builder.addDoubleProperty("p", child::getP, child::setP);
-    builder.addDoubleProperty("i", child::getI, child::setI);
-    builder.addDoubleProperty("d", child::getD, child::setD);
-    builder.addDoubleProperty("f", child::getFF, child::setFF);
-    // TODO: 11/12/23 This is annoying to do, but do it sometime else. Probably Supplier<Double> for ::get
-    builder.addDoubleProperty("setpoint", null, null);
-    // TODO: 11/12/23 Lowkey same thing as the thing above.
-    builder.addBooleanProperty("enabled", () -> true, null);
+    // The gains may be attached after the widget is built, so check for them on every access.
+    builder.addDoubleProperty("p",
+            () -> gains != null ? gains.getP().get() : child.getP(),
+            value -> { if (gains != null) gains.getP().set(value); else child.setP(value); });
+    builder.addDoubleProperty("i",
+            () -> gains != null ? gains.getI().get() : child.getI(),
+            value -> { if (gains != null) gains.getI().set(value); else child.setI(value); });
+    builder.addDoubleProperty("d",
+            () -> gains != null ? gains.getD().get() : child.getD(),
+            value -> { if (gains != null) gains.getD().set(value); else child.setD(value); });
+    builder.addDoubleProperty("f",
+            () -> gains != null ? gains.getFF().get() : child.getFF(),
+            value -> { if (gains != null) gains.getFF().set(value); else child.setFF(value); });
+    builder.addDoubleProperty("setpoint", this::getReference, value -> {
+      if (referenceHandler != null) referenceHandler.accept(value); else setReference(value, controlType);
+    });
+    builder.addBooleanProperty("enabled", this::isEnabled, value -> {
+      if (enabledHandler != null) enabledHandler.accept(value); else setEnabled(value);
+    });
+    builder.addStringProperty("control type", () -> controlType.name(), null);
+    builder.addDoubleProperty("measurement", () -> {
+      refreshPublished();
+      return publishedMeasurement;
+    }, null);
+    builder.addDoubleProperty("error", () -> {
+      refreshPublished();
+      return publishedError;
+    }, null);
   }
 }
@@ -0,0 +1,138 @@
+package frc.shuffleboard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dashboard tunable values that survive a reboot. Each {@link TunableNumber} is published under the "Tunables"
+ * NetworkTables table and cached locally; a NetworkTables listener updates the cache when the value is edited, so
+ * reading it never touches NetworkTables.
+ *
+ * <p>Changed values are saved to {@value #FILE_NAME} in the deploy directory, on a background thread, and loaded
+ * back in place of the defaults in code on the next boot. Deploying doesn't remove the file, so delete it (or copy it
+ * into src/main/deploy) to reset or keep the tuned values. The file records its format version and a revision that
+ * counts up with every save.
+ */
+public final class TunableStore {
+  private static final String FILE_NAME = "tunables.json";
+  private static final int FORMAT_VERSION = 1;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final File file = new File(Filesystem.getDeployDirectory(), FILE_NAME);
+  private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("Tunables");
+  private static final Map<String, TunableNumber> numbers = new TreeMap<>();
+  private static final Map<String, Double> persisted = new HashMap<>();
+  private static final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+    final var thread = new Thread(runnable, "Tunables");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final AtomicBoolean savePending = new AtomicBoolean(false);
+  private static long revision = 0;
+
+  static {
+    load();
+    GlobalTab.DEBUG.addNumber("Tunables Revision", () -> revision);
+  }
+
+  private TunableStore() {}
+
+  /**
+   * Gets the tunable number with the given key, creating it if it doesn't exist yet. Its value is the persisted one
+   * if there is one, otherwise the default.
+   *
+   * @param key          The key, e.g. "Driving/P".
+   * @param defaultValue The value in code.
+   * @return The tunable number.
+   */
+  public static synchronized TunableNumber number(String key, double defaultValue) {
+    final TunableNumber existing = numbers.get(key);
+    if (existing != null) {
+      return existing;
+    }
+
+    final double initialValue = persisted.getOrDefault(key, defaultValue);
+    final var entry = table.getDoubleTopic(key).getEntry(initialValue);
+    entry.set(initialValue);
+    final var number = new TunableNumber(key, defaultValue, initialValue, entry);
+    NetworkTableInstance.getDefault().addListener(entry, EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+            event -> number.update(event.valueData.value.getDouble()));
+    numbers.put(key, number);
+    return number;
+  }
+
+  /**
+   * Runs a task on the store's background thread, after any pending saves. Used to push tuned values to hardware
+   * without blocking the robot loop.
+   */
+  static void runInBackground(Runnable task) {
+    worker.execute(task);
+  }
+
+  /** Saves every value on the background thread, coalescing changes that come in before the save runs. */
+  static void scheduleSave() {
+    if (savePending.compareAndSet(false, true)) {
+      worker.execute(() -> {
+        savePending.set(false);
+        save();
+      });
+    }
+  }
+
+  private static synchronized void save() {
+    final ObjectNode root = MAPPER.createObjectNode();
+    root.put("version", FORMAT_VERSION);
+    root.put("revision", ++revision);
+    final ObjectNode values = root.putObject("values");
+    // Keep values that weren't created this boot, so they aren't lost by running code that doesn't use them.
+    persisted.forEach(values::put);
+    numbers.forEach((key, number) -> values.put(key, number.get()));
+
+    try {
+      MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, root);
+    } catch (IOException e) {
+      DriverStation.reportError("Failed to save tunables to " + file + ": " + e.getMessage(), false);
+    }
+  }
+
+  private static void load() {
+    if (!file.exists()) {
+      return;
+    }
+
+    try {
+      final JsonNode root = MAPPER.readTree(file);
+      if (root.path("version").asInt() != FORMAT_VERSION) {
+        DriverStation.reportWarning("Ignoring " + file + ", it's from an unknown format version", false);
+        return;
+      }
+      revision = root.path("revision").asLong();
+      final Iterator<Map.Entry<String, JsonNode>> values = root.path("values").fields();
+      while (values.hasNext()) {
+        final var value = values.next();
+        if (value.getValue().isNumber()) {
+          persisted.put(value.getKey(), value.getValue().asDouble());
+        }
+      }
+    } catch (IOException e) {
+      DriverStation.reportError("Failed to load tunables from " + file + ": " + e.getMessage(), false);
+    }
+  }
+}
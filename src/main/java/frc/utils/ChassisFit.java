@@ -0,0 +1,145 @@
+package frc.utils;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Least squares forward kinematics over a subset of swerve modules. Given how each module moved (or how fast), it
+ * finds the chassis motion that best explains the included modules, so a module can be checked against, or
+ * reconstructed from, the others. Fitting the rotation too takes at least two modules.
+ *
+ * <p>Each module contributes {@code dx = vx - omega * y} and {@code dy = vy + omega * x}; the 3x3 normal equations
+ * are solved in closed form, without allocating.
+ */
+public class ChassisFit {
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+
+  /**
+   * @param moduleLocations The locations of the modules relative to the center of the robot.
+   */
+  public ChassisFit(Translation2d... moduleLocations) {
+    moduleX = new double[moduleLocations.length];
+    moduleY = new double[moduleLocations.length];
+    for (int i = 0; i < moduleLocations.length; i++) {
+      moduleX[i] = moduleLocations[i].getX();
+      moduleY[i] = moduleLocations[i].getY();
+    }
+  }
+
+  /**
+   * Fits the chassis motion to the included modules.
+   *
+   * @param dx       Each module's motion in the robot's x direction.
+   * @param dy       Each module's motion in the robot's y direction.
+   * @param included A bitmask of the modules to fit to, bit i for module i.
+   * @return Whether enough modules were included to fit.
+   */
+  public boolean fit(double[] dx, double[] dy, int included) {
+    int n = 0;
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumRadiusSquared = 0.0;
+    double sumDx = 0.0;
+    double sumDy = 0.0;
+    double sumMoment = 0.0;
+    for (int i = 0; i < moduleX.length; i++) {
+      if ((included & (1 << i)) != 0) {
+        n++;
+        sumX += moduleX[i];
+        sumY += moduleY[i];
+        sumRadiusSquared += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+        sumDx += dx[i];
+        sumDy += dy[i];
+        sumMoment += moduleX[i] * dy[i] - moduleY[i] * dx[i];
+      }
+    }
+    if (n < 2) {
+      return false;
+    }
+
+    // Normal equations:
+    // [ n      0      -sumY ] [vx]      [sumDx    ]
+    // [ 0      n       sumX ] [vy]    = [sumDy    ]
+    // [ -sumY  sumX    sumR2] [omega]   [sumMoment]
+    final double determinant = n * (n * sumRadiusSquared - sumX * sumX - sumY * sumY);
+    if (Math.abs(determinant) < 1e-12) {
+      return false;
+    }
+    omega = (n * sumMoment + sumY * sumDx - sumX * sumDy) / (n * sumRadiusSquared - sumX * sumX - sumY * sumY);
+    vx = (sumDx + omega * sumY) / n;
+    vy = (sumDy - omega * sumX) / n;
+    return true;
+  }
+
+  /**
+   * Fits the chassis translation to the included modules, with the rotation already known, e.g. from a gyro. A
+   * single module is enough.
+   *
+   * @param dx       Each module's motion in the robot's x direction.
+   * @param dy       Each module's motion in the robot's y direction.
+   * @param included A bitmask of the modules to fit to, bit i for module i.
+   * @param omega    The chassis rotation over the same interval.
+   * @return Whether any modules were included.
+   */
+  public boolean fitTranslation(double[] dx, double[] dy, int included, double omega) {
+    int n = 0;
+    double sumVx = 0.0;
+    double sumVy = 0.0;
+    for (int i = 0; i < moduleX.length; i++) {
+      if ((included & (1 << i)) != 0) {
+        n++;
+        sumVx += dx[i] + omega * moduleY[i];
+        sumVy += dy[i] - omega * moduleX[i];
+      }
+    }
+    if (n == 0) {
+      return false;
+    }
+
+    vx = sumVx / n;
+    vy = sumVy / n;
+    this.omega = omega;
+    return true;
+  }
+
+  /**
+   * @return The fitted chassis motion in the x direction.
+   */
+  public double getVx() {
+    return vx;
+  }
+
+  /**
+   * @return The fitted chassis motion in the y direction.
+   */
+  public double getVy() {
+    return vy;
+  }
+
+  /**
+   * @return The fitted chassis rotation.
+   */
+  public double getOmega() {
+    return omega;
+  }
+
+  /**
+   * @param module The index of the module.
+   * @return The x motion the fit predicts for the module.
+   */
+  public double getModuleDx(int module) {
+    return vx - omega * moduleY[module];
+  }
+
+  /**
+   * @param module The index of the module.
+   * @return The y motion the fit predicts for the module.
+   */
+  public double getModuleDy(int module) {
+    return vy + omega * moduleX[module];
+  }
+}
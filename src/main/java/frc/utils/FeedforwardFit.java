@@ -0,0 +1,146 @@
+package frc.utils;
+
+/**
+ * Ordinary least squares fit of a permanent magnet DC motor feedforward model,
+ * {@code V = kS * sgn(v) + kV * v + kA * a}. Samples are folded into running sums as they're added, so fitting a
+ * long run takes constant memory and never allocates until {@link #solve()}.
+ */
+public class FeedforwardFit {
+  private final double[][] xtx = new double[3][3];
+  private final double[] xty = new double[3];
+  private double sumY = 0.0;
+  private double sumYY = 0.0;
+  private int count = 0;
+
+  private double ks = Double.NaN;
+  private double kv = Double.NaN;
+  private double ka = Double.NaN;
+  private double rSquared = Double.NaN;
+
+  /** Discards every sample and the last fit. */
+  public void reset() {
+    for (int row = 0; row < 3; row++) {
+      xty[row] = 0.0;
+      for (int column = 0; column < 3; column++) {
+        xtx[row][column] = 0.0;
+      }
+    }
+    sumY = 0.0;
+    sumYY = 0.0;
+    count = 0;
+    ks = kv = ka = rSquared = Double.NaN;
+  }
+
+  /**
+   * @param volts        The voltage applied to the motor.
+   * @param velocity     The measured velocity.
+   * @param acceleration The measured acceleration.
+   */
+  public void addSample(double volts, double velocity, double acceleration) {
+    final double s = Math.signum(velocity);
+    addRow(0, s, s, velocity, acceleration, volts);
+    addRow(1, velocity, s, velocity, acceleration, volts);
+    addRow(2, acceleration, s, velocity, acceleration, volts);
+    sumY += volts;
+    sumYY += volts * volts;
+    count++;
+  }
+
+  private void addRow(int row, double x, double s, double velocity, double acceleration, double volts) {
+    xtx[row][0] += x * s;
+    xtx[row][1] += x * velocity;
+    xtx[row][2] += x * acceleration;
+    xty[row] += x * volts;
+  }
+
+  /**
+   * @return The number of samples added since the last reset.
+   */
+  public int getSampleCount() {
+    return count;
+  }
+
+  /**
+   * Fits the model to the samples so far.
+   *
+   * @return Whether the fit succeeded. It fails if the samples don't excite every term, e.g. without both a
+   * quasistatic and a dynamic test.
+   */
+  public boolean solve() {
+    // Gaussian elimination with partial pivoting on the normal equations.
+    final double[][] a = new double[3][4];
+    for (int row = 0; row < 3; row++) {
+      System.arraycopy(xtx[row], 0, a[row], 0, 3);
+      a[row][3] = xty[row];
+    }
+
+    for (int column = 0; column < 3; column++) {
+      int pivot = column;
+      for (int row = column + 1; row < 3; row++) {
+        if (Math.abs(a[row][column]) > Math.abs(a[pivot][column])) {
+          pivot = row;
+        }
+      }
+      if (Math.abs(a[pivot][column]) < 1e-12) {
+        return false;
+      }
+      final double[] swap = a[column];
+      a[column] = a[pivot];
+      a[pivot] = swap;
+
+      for (int row = 0; row < 3; row++) {
+        if (row != column) {
+          final double factor = a[row][column] / a[column][column];
+          for (int k = column; k < 4; k++) {
+            a[row][k] -= factor * a[column][k];
+          }
+        }
+      }
+    }
+
+    ks = a[0][3] / a[0][0];
+    kv = a[1][3] / a[1][1];
+    ka = a[2][3] / a[2][2];
+
+    // Residual sum of squares from the sums: y'y - 2 b'X'y + b'X'X b
+    final double[] b = {ks, kv, ka};
+    double residual = sumYY;
+    for (int row = 0; row < 3; row++) {
+      residual -= 2 * b[row] * xty[row];
+      for (int column = 0; column < 3; column++) {
+        residual += b[row] * xtx[row][column] * b[column];
+      }
+    }
+    final double total = sumYY - sumY * sumY / count;
+    rSquared = total > 0 ? 1 - residual / total : Double.NaN;
+    return true;
+  }
+
+  /**
+   * @return The static friction voltage from the last fit, or NaN.
+   */
+  public double getKs() {
+    return ks;
+  }
+
+  /**
+   * @return The velocity gain from the last fit, or NaN.
+   */
+  public double getKv() {
+    return kv;
+  }
+
+  /**
+   * @return The acceleration gain from the last fit, or NaN.
+   */
+  public double getKa() {
+    return ka;
+  }
+
+  /**
+   * @return The coefficient of determination of the last fit, or NaN.
+   */
+  public double getRSquared() {
+    return rSquared;
+  }
+}
@@ -0,0 +1,297 @@
+package frc.utils;
+
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.StringArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.shuffleboard.GlobalTab;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lightweight timing instrumentation for the robot loop. Each named {@link Stage} keeps a preallocated ring buffer
+ * of its per-cycle time, and p50/p99/max are periodically published to the {@link GlobalTab#DEBUG} tab. When a cycle
+ * takes longer than the loop period, the stage that spent the longest that cycle in its own code, not counting the
+ * stages nested inside it, is reported as the offender. Otherwise an outer stage like "CommandScheduler.run()" would
+ * always be blamed. Every cycle's stage times are also appended to the data log, so overruns can be traced after a
+ * match. Commands are timed by {@link #profileCommands(CommandScheduler)}, so they don't need stages of their own.
+ *
+ * <p>This is only meant to be used from the main robot thread.
+ */
+public class LoopProfiler {
+  private static final int WINDOW_SIZE = 256; // cycles, ~5 seconds at 50 Hz
+  private static final int PUBLISH_PERIOD_CYCLES = 25;
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private static final List<Stage> stages = new ArrayList<>();
+  private static final Stage LOOP = stage("Loop");
+  private static final Stage GC = stage("GC Pauses");
+  // The stages currently running, innermost last, so each one's time can be split from the stages nested inside it
+  private static final Stage[] runningStages = new Stage[16];
+  private static int runningDepth = 0;
+  private static final GarbageCollectorMXBean[] gcBeans = ManagementFactory.getGarbageCollectorMXBeans()
+          .toArray(new GarbageCollectorMXBean[0]);
+
+  // The execute() stage of each command the scheduler has run, and when the command running now started
+  private static final Map<Command, Stage> commandStages = new IdentityHashMap<>();
+  private static long commandStartNanos = System.nanoTime();
+
+  private static long cycleStartNanos = System.nanoTime();
+  private static long lastGcMillis = totalGcMillis();
+  private static int cyclesSincePublish = 0;
+  private static int overruns = 0;
+  private static String lastOverrunStage = "";
+
+  // Created on the first cycle, so the data log isn't started before Robot#robotInit() gets to configure it.
+  private static StringArrayLogEntry stageNamesEntry;
+  private static DoubleArrayLogEntry stageTimesEntry;
+  private static double[] stageTimes = new double[0];
+
+  static {
+    GlobalTab.DEBUG.addNumber("Loop Overruns", () -> overruns);
+    GlobalTab.DEBUG.addString("Last Overrun Stage", () -> lastOverrunStage);
+  }
+
+  private LoopProfiler() {}
+
+  /**
+   * Gets the stage with the given name, creating it and registering it on the {@link GlobalTab#DEBUG} tab if it doesn't
+   * exist yet. Stages should be looked up once, e.g. as a field, not every cycle.
+   *
+   * @param name The name of the stage, e.g. "DriveSubsystem.periodic()".
+   * @return The stage.
+   */
+  public static Stage stage(String name) {
+    for (final var stage : stages) {
+      if (stage.name.equals(name)) {
+        return stage;
+      }
+    }
+
+    final var stage = new Stage(name);
+    stages.add(stage);
+    GlobalTab.DEBUG.addDoubleArray(name + " p50/p99/max (ms)", () -> stage.stats);
+    return stage;
+  }
+
+  /**
+   * Times every command the scheduler runs as a stage of its own, named like the scheduler's watchdog epochs, e.g.
+   * "SwerveDriveCommand.execute()". This should be called once the button bindings are set up.
+   *
+   * <p>The scheduler has no hook for before a command runs, only after, so each command's time is measured from the
+   * previous boundary: the end of button polling, or the previous command's execute(), end() or interruption. So a
+   * command's stage also includes the previous command's isFinished(). A command group is timed as a whole. The
+   * stages are counted as nested in whichever stage runs the scheduler.
+   *
+   * @param scheduler The scheduler, i.e. {@link CommandScheduler#getInstance()}.
+   */
+  public static void profileCommands(CommandScheduler scheduler) {
+    // Bound last, so this runs after every other binding and right before the scheduler runs its commands.
+    scheduler.getDefaultButtonLoop().bind(() -> commandStartNanos = System.nanoTime());
+    scheduler.onCommandExecute(command -> {
+      final long now = System.nanoTime();
+      commandStages.computeIfAbsent(command, c -> stage(c.getName() + ".execute()"))
+              .recordNested(now - commandStartNanos);
+      commandStartNanos = now;
+    });
+    scheduler.onCommandFinish(command -> commandStartNanos = System.nanoTime());
+    scheduler.onCommandInterrupt(command -> commandStartNanos = System.nanoTime());
+  }
+
+  /** Marks the start of a robot loop cycle. */
+  public static void startCycle() {
+    cycleStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Marks the end of a robot loop cycle, recording every stage that ran this cycle and flagging overruns.
+   *
+   * @param periodSeconds The loop period budget, in seconds.
+   */
+  public static void endCycle(double periodSeconds) {
+    final long loopNanos = System.nanoTime() - cycleStartNanos;
+    LOOP.record(loopNanos);
+
+    final long gcMillis = totalGcMillis();
+    GC.record((long) ((gcMillis - lastGcMillis) * NANOS_PER_MILLI));
+    lastGcMillis = gcMillis;
+
+    if (loopNanos > periodSeconds * 1e9) {
+      overruns++;
+      Stage offender = null;
+      for (int i = 0; i < stages.size(); i++) {
+        final var stage = stages.get(i);
+        if (stage != LOOP && stage.ran && (offender == null || stage.exclusiveNanos > offender.exclusiveNanos)) {
+          offender = stage;
+        }
+      }
+      if (offender != null) {
+        lastOverrunStage = offender.name;
+      }
+    }
+
+    log();
+
+    for (int i = 0; i < stages.size(); i++) {
+      stages.get(i).commit();
+    }
+
+    if (++cyclesSincePublish >= PUBLISH_PERIOD_CYCLES) {
+      cyclesSincePublish = 0;
+      for (int i = 0; i < stages.size(); i++) {
+        stages.get(i).updateStats();
+      }
+    }
+  }
+
+  /**
+   * Appends this cycle's time of every stage, in milliseconds, to the data log. Stages that didn't run are logged as 0.
+   * The stage names are logged again whenever a new stage is registered, since the times are positional.
+   */
+  private static void log() {
+    if (stageTimesEntry == null) {
+      stageNamesEntry = new StringArrayLogEntry(DataLogManager.getLog(), "/LoopProfiler/Stages");
+      stageTimesEntry = new DoubleArrayLogEntry(DataLogManager.getLog(), "/LoopProfiler/StageTimes");
+    }
+
+    if (stageTimes.length != stages.size()) {
+      stageTimes = new double[stages.size()];
+      final String[] names = new String[stages.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = stages.get(i).name;
+      }
+      stageNamesEntry.append(names);
+    }
+
+    for (int i = 0; i < stageTimes.length; i++) {
+      stageTimes[i] = stages.get(i).cycleNanos / NANOS_PER_MILLI;
+    }
+    stageTimesEntry.append(stageTimes);
+  }
+
+  private static void push(Stage stage) {
+    if (runningDepth < runningStages.length) {
+      runningStages[runningDepth++] = stage;
+    }
+  }
+
+  /**
+   * Removes a stage from the running stages, wherever it is in case stages weren't stopped in order.
+   *
+   * @return The stage the removed one was nested in, or null if it wasn't nested.
+   */
+  private static Stage pop(Stage stage) {
+    for (int i = runningDepth - 1; i >= 0; i--) {
+      if (runningStages[i] == stage) {
+        System.arraycopy(runningStages, i + 1, runningStages, i, runningDepth - i - 1);
+        runningStages[--runningDepth] = null;
+        return i > 0 ? runningStages[i - 1] : null;
+      }
+    }
+    return null;
+  }
+
+  private static long totalGcMillis() {
+    long total = 0;
+    for (final var bean : gcBeans) {
+      total += Math.max(bean.getCollectionTime(), 0);
+    }
+    return total;
+  }
+
+  /**
+   * A timed section of the robot loop. A stage may be started and stopped several times per cycle; the time is summed
+   * and recorded as a single sample when the cycle ends. Stages may be nested, e.g. a subsystem's periodic inside the
+   * command scheduler's; the recorded time includes the nested stages, but the time used to pick an overrun's offender
+   * doesn't.
+   */
+  public static class Stage {
+    private final String name;
+    private final long[] samples = new long[WINDOW_SIZE];
+    private final long[] sorted = new long[WINDOW_SIZE];
+    private final double[] stats = new double[3];
+    private int nextSample = 0;
+    private int sampleCount = 0;
+
+    private long startNanos = 0;
+    private long childNanos = 0;
+    private long cycleNanos = 0;
+    private long exclusiveNanos = 0;
+    private boolean running = false;
+    private boolean ran = false;
+
+    private Stage(String name) {
+      this.name = name;
+    }
+
+    /** Starts timing this stage. */
+    public void start() {
+      if (!running) {
+        push(this);
+      }
+      startNanos = System.nanoTime();
+      childNanos = 0;
+      running = true;
+    }
+
+    /** Stops timing this stage, adding the elapsed time to this cycle's total. */
+    public void stop() {
+      if (running) {
+        final long nanos = System.nanoTime() - startNanos;
+        cycleNanos += nanos;
+        exclusiveNanos += nanos - childNanos;
+        ran = true;
+        running = false;
+
+        final Stage parent = pop(this);
+        if (parent != null) {
+          parent.childNanos += nanos;
+        }
+      }
+    }
+
+    private void record(long nanos) {
+      cycleNanos += nanos;
+      exclusiveNanos += nanos;
+      ran = true;
+    }
+
+    /** Records time measured inside the innermost running stage, which then doesn't count it as its own. */
+    private void recordNested(long nanos) {
+      record(nanos);
+      if (runningDepth > 0) {
+        runningStages[runningDepth - 1].childNanos += nanos;
+      }
+    }
+
+    private void commit() {
+      if (ran) {
+        samples[nextSample] = cycleNanos;
+        nextSample = (nextSample + 1) % WINDOW_SIZE;
+        sampleCount = Math.min(sampleCount + 1, WINDOW_SIZE);
+      }
+      cycleNanos = 0;
+      exclusiveNanos = 0;
+      ran = false;
+    }
+
+    private void updateStats() {
+      if (sampleCount == 0) {
+        return;
+      }
+
+      System.arraycopy(samples, 0, sorted, 0, sampleCount);
+      Arrays.sort(sorted, 0, sampleCount);
+      stats[0] = sorted[(sampleCount - 1) / 2] / NANOS_PER_MILLI;
+      stats[1] = sorted[(int) Math.ceil(0.99 * sampleCount) - 1] / NANOS_PER_MILLI;
+      stats[2] = sorted[sampleCount - 1] / NANOS_PER_MILLI;
+    }
+  }
+}
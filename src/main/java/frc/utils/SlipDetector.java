@@ -0,0 +1,107 @@
+package frc.utils;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Detects swerve modules whose wheels are slipping, by checking each module's measured velocity against the velocity
+ * the rest of the drivetrain says it should have. The chassis translation is fitted to the other modules, with the
+ * rotation taken from the gyro, and the module that disagrees most is flagged if it's off by more than the
+ * threshold. This repeats until the remaining modules agree, as long as at least two are left to trust.
+ *
+ * <p>A flagged module stays flagged for the hold time, so traction control doesn't chatter. The current time is passed
+ * in rather than read from the FPGA, and nothing is allocated per call.
+ */
+public class SlipDetector {
+  // Modules that have to remain trusted for a fit to be meaningful
+  private static final int MIN_TRUSTED_MODULES = 2;
+
+  private final ChassisFit fit;
+  private final int moduleCount;
+  private final double slipThreshold;
+  private final double holdTime;
+
+  private final double[] slipUntil;
+  private final double[] groundSpeeds;
+  private int slipping = 0;
+
+  /**
+   * @param slipThreshold   The difference between a wheel's velocity and the fitted velocity above which it's
+   *                        slipping, in meters per second.
+   * @param holdTime        How long a module stays flagged after it last slipped, in seconds.
+   * @param moduleLocations The locations of the modules relative to the center of the robot.
+   */
+  public SlipDetector(double slipThreshold, double holdTime, Translation2d... moduleLocations) {
+    this.fit = new ChassisFit(moduleLocations);
+    this.moduleCount = moduleLocations.length;
+    this.slipThreshold = slipThreshold;
+    this.holdTime = holdTime;
+    this.slipUntil = new double[moduleCount];
+    this.groundSpeeds = new double[moduleCount];
+  }
+
+  /**
+   * Checks the latest module velocities for slip.
+   *
+   * @param vx                    Each module's measured velocity in the robot's x direction, in meters per second.
+   * @param vy                    Each module's measured velocity in the robot's y direction, in meters per second.
+   * @param omegaRadiansPerSecond The gyro's angular rate, counter-clockwise positive.
+   * @param enabled               A bitmask of the modules to consider, bit i for module i.
+   * @param currentTime           The current time, in seconds.
+   * @return A bitmask of the slipping modules.
+   */
+  public int update(double[] vx, double[] vy, double omegaRadiansPerSecond, int enabled, double currentTime) {
+    int trusted = enabled;
+    while (Integer.bitCount(trusted) > MIN_TRUSTED_MODULES) {
+      int worst = -1;
+      double worstError = slipThreshold;
+      for (int i = 0; i < moduleCount; i++) {
+        if ((trusted & (1 << i)) != 0 && fit.fitTranslation(vx, vy, trusted & ~(1 << i), omegaRadiansPerSecond)) {
+          final double error = Math.hypot(vx[i] - fit.getModuleDx(i), vy[i] - fit.getModuleDy(i));
+          if (error > worstError) {
+            worst = i;
+            worstError = error;
+          }
+        }
+      }
+      if (worst < 0) {
+        break;
+      }
+      trusted &= ~(1 << worst);
+      slipUntil[worst] = currentTime + holdTime;
+    }
+
+    slipping = 0;
+    for (int i = 0; i < moduleCount; i++) {
+      if ((enabled & (1 << i)) != 0 && currentTime < slipUntil[i]) {
+        slipping |= 1 << i;
+      }
+    }
+    // Held modules may have recovered, but there have to be enough left to trust.
+    if (Integer.bitCount(enabled & ~slipping) < MIN_TRUSTED_MODULES) {
+      slipping = enabled & ~trusted;
+    }
+
+    if (fit.fitTranslation(vx, vy, enabled & ~slipping, omegaRadiansPerSecond)) {
+      for (int i = 0; i < moduleCount; i++) {
+        groundSpeeds[i] = Math.hypot(fit.getModuleDx(i), fit.getModuleDy(i));
+      }
+    }
+    return slipping;
+  }
+
+  /**
+   * @return A bitmask of the modules flagged by the last {@link #update}.
+   */
+  public int getSlipping() {
+    return slipping;
+  }
+
+  /**
+   * @param module The index of the module.
+   * @return The speed the module is actually moving over the ground, according to the trusted modules, in meters per
+   *         second.
+   */
+  public double getGroundSpeed(int module) {
+    return groundSpeeds[module];
+  }
+}
@@ -0,0 +1,236 @@
+package frc.utils;
+
+import com.revrobotics.AbsoluteEncoder;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.IdleMode;
+import com.revrobotics.MotorFeedbackSensor;
+import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
+import com.revrobotics.SparkMaxPIDController;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Desired configuration of a SPARK MAX. {@link #apply(CANSparkMax)} reads the controller's stored configuration back
+ * and only factory resets, rewrites and burns flash when it differs, so a normal boot doesn't wear the flash.
+ *
+ * <p>The PIDF gains are left out of that comparison, since they're tuned at runtime and persisted outside the
+ * controller (see {@code TunableSparkMaxGains}); comparing them would reflash every boot after tuning. They're written
+ * without a flash instead, every time the configuration is applied.
+ */
+public class SparkMaxConfig {
+  // Parameters are stored as floats on the SPARK MAX, so read backs won't match exactly.
+  private static final double TOLERANCE = 1e-5;
+
+  public enum Result {
+    /** The stored configuration already matched, nothing was written to flash. */
+    UNCHANGED,
+    /** The configuration was rewritten and burned to flash. */
+    FLASHED,
+    /** The configuration didn't read back correctly after being written. */
+    FAILED
+  }
+
+  private boolean inverted = false;
+  private IdleMode idleMode = IdleMode.kBrake;
+  private int smartCurrentLimit = 80;
+  private double voltageCompensation = 0.0; // volts, 0 when disabled
+
+  private boolean absoluteEncoder = false;
+  private boolean encoderInverted = false;
+  private double positionConversionFactor = 1.0;
+  private double velocityConversionFactor = 1.0;
+
+  private double p = 0.0;
+  private double i = 0.0;
+  private double d = 0.0;
+  private double ff = 0.0;
+  private double minOutput = -1.0;
+  private double maxOutput = 1.0;
+
+  private boolean positionWrappingEnabled = false;
+  private double positionWrappingMinInput = 0.0;
+  private double positionWrappingMaxInput = 0.0;
+
+  public SparkMaxConfig withInverted(boolean inverted) {
+    this.inverted = inverted;
+    return this;
+  }
+
+  public SparkMaxConfig withIdleMode(IdleMode idleMode) {
+    this.idleMode = idleMode;
+    return this;
+  }
+
+  public SparkMaxConfig withSmartCurrentLimit(int amps) {
+    this.smartCurrentLimit = amps;
+    return this;
+  }
+
+  /**
+   * Scales the output to behave as if the bus were at the given voltage, so the response doesn't change as the
+   * battery sags.
+   */
+  public SparkMaxConfig withVoltageCompensation(double nominalVoltage) {
+    this.voltageCompensation = nominalVoltage;
+    return this;
+  }
+
+  /**
+   * Uses the built-in relative encoder as the feedback device.
+   */
+  public SparkMaxConfig withRelativeEncoder(double positionConversionFactor, double velocityConversionFactor) {
+    this.absoluteEncoder = false;
+    this.positionConversionFactor = positionConversionFactor;
+    this.velocityConversionFactor = velocityConversionFactor;
+    return this;
+  }
+
+  /**
+   * Uses a duty cycle absolute encoder (e.g. a REV ThroughBore Encoder) as the feedback device.
+   */
+  public SparkMaxConfig withAbsoluteEncoder(double positionConversionFactor, double velocityConversionFactor, boolean inverted) {
+    this.absoluteEncoder = true;
+    this.positionConversionFactor = positionConversionFactor;
+    this.velocityConversionFactor = velocityConversionFactor;
+    this.encoderInverted = inverted;
+    return this;
+  }
+
+  public SparkMaxConfig withPIDF(double p, double i, double d, double ff) {
+    this.p = p;
+    this.i = i;
+    this.d = d;
+    this.ff = ff;
+    return this;
+  }
+
+  public SparkMaxConfig withOutputRange(double min, double max) {
+    this.minOutput = min;
+    this.maxOutput = max;
+    return this;
+  }
+
+  public SparkMaxConfig withPositionWrapping(double minInput, double maxInput) {
+    this.positionWrappingEnabled = true;
+    this.positionWrappingMinInput = minInput;
+    this.positionWrappingMaxInput = maxInput;
+    return this;
+  }
+
+  /**
+   * Applies this configuration, only writing to flash if the stored configuration differs. Values that can't be read
+   * back (the feedback device and smart current limit) and the PIDF gains are always set, since they don't need a
+   * flash write to take effect.
+   *
+   * <p>This blocks on CAN round trips, so it's safe (and faster) to call concurrently for different controllers.
+   *
+   * @param sparkMax The SPARK MAX to configure.
+   * @return Whether the flash was written, and whether the configuration verified.
+   */
+  public Result apply(CANSparkMax sparkMax) {
+    Result result = Result.UNCHANGED;
+    if (!matches(sparkMax)) {
+      // Factory reset, so we get the SPARK MAX to a known state before configuring
+      // it. This is useful in case a SPARK MAX is swapped out.
+      sparkMax.restoreFactoryDefaults();
+      write(sparkMax);
+
+      if (!matches(sparkMax)) {
+        DriverStation.reportError("SPARK MAX " + sparkMax.getDeviceId() + " configuration didn't verify", false);
+        return Result.FAILED;
+      }
+
+      // Save the SPARK MAX configuration. If a SPARK MAX browns out during
+      // operation, it will maintain the above configuration.
+      sparkMax.burnFlash();
+      result = Result.FLASHED;
+    }
+
+    final SparkMaxPIDController pidController = sparkMax.getPIDController();
+    pidController.setFeedbackDevice(getFeedbackSensor(sparkMax));
+    writeGains(pidController);
+    sparkMax.setSmartCurrentLimit(smartCurrentLimit);
+    return result;
+  }
+
+  private MotorFeedbackSensor getFeedbackSensor(CANSparkMax sparkMax) {
+    return absoluteEncoder ? sparkMax.getAbsoluteEncoder(Type.kDutyCycle) : sparkMax.getEncoder();
+  }
+
+  private void write(CANSparkMax sparkMax) {
+    sparkMax.setInverted(inverted);
+    sparkMax.setIdleMode(idleMode);
+    sparkMax.setSmartCurrentLimit(smartCurrentLimit);
+    if (voltageCompensation > 0) {
+      sparkMax.enableVoltageCompensation(voltageCompensation);
+    } else {
+      sparkMax.disableVoltageCompensation();
+    }
+
+    if (absoluteEncoder) {
+      final AbsoluteEncoder encoder = sparkMax.getAbsoluteEncoder(Type.kDutyCycle);
+      encoder.setPositionConversionFactor(positionConversionFactor);
+      encoder.setVelocityConversionFactor(velocityConversionFactor);
+      encoder.setInverted(encoderInverted);
+    } else {
+      final RelativeEncoder encoder = sparkMax.getEncoder();
+      encoder.setPositionConversionFactor(positionConversionFactor);
+      encoder.setVelocityConversionFactor(velocityConversionFactor);
+    }
+
+    final SparkMaxPIDController pidController = sparkMax.getPIDController();
+    pidController.setFeedbackDevice(getFeedbackSensor(sparkMax));
+    writeGains(pidController);
+    pidController.setOutputRange(minOutput, maxOutput);
+    pidController.setPositionPIDWrappingEnabled(positionWrappingEnabled);
+    if (positionWrappingEnabled) {
+      pidController.setPositionPIDWrappingMinInput(positionWrappingMinInput);
+      pidController.setPositionPIDWrappingMaxInput(positionWrappingMaxInput);
+    }
+  }
+
+  private void writeGains(SparkMaxPIDController pidController) {
+    pidController.setP(p);
+    pidController.setI(i);
+    pidController.setD(d);
+    pidController.setFF(ff);
+  }
+
+  // The PIDF gains aren't compared, see the class comment.
+  private boolean matches(CANSparkMax sparkMax) {
+    if (sparkMax.getInverted() != inverted || sparkMax.getIdleMode() != idleMode
+            || !equal(sparkMax.getVoltageCompensationNominalVoltage(), voltageCompensation)) {
+      return false;
+    }
+
+    if (absoluteEncoder) {
+      final AbsoluteEncoder encoder = sparkMax.getAbsoluteEncoder(Type.kDutyCycle);
+      if (!equal(encoder.getPositionConversionFactor(), positionConversionFactor)
+              || !equal(encoder.getVelocityConversionFactor(), velocityConversionFactor)
+              || encoder.getInverted() != encoderInverted) {
+        return false;
+      }
+    } else {
+      final RelativeEncoder encoder = sparkMax.getEncoder();
+      if (!equal(encoder.getPositionConversionFactor(), positionConversionFactor)
+              || !equal(encoder.getVelocityConversionFactor(), velocityConversionFactor)) {
+        return false;
+      }
+    }
+
+    final SparkMaxPIDController pidController = sparkMax.getPIDController();
+    if (!equal(pidController.getOutputMin(), minOutput)
+            || !equal(pidController.getOutputMax(), maxOutput)
+            || pidController.getPositionPIDWrappingEnabled() != positionWrappingEnabled) {
+      return false;
+    }
+
+    return !positionWrappingEnabled
+            || (equal(pidController.getPositionPIDWrappingMinInput(), positionWrappingMinInput)
+            && equal(pidController.getPositionPIDWrappingMaxInput(), positionWrappingMaxInput));
+  }
+
+  private static boolean equal(double actual, double expected) {
+    return Math.abs(actual - expected) <= TOLERANCE * Math.max(1.0, Math.abs(expected));
+  }
+}
@@ -0,0 +1,104 @@
+package frc.utils;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Preallocated, mutable set of swerve module setpoints. This mirrors what
+ * {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#toSwerveModuleStates} and
+ * {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#desaturateWheelSpeeds} do, but works in place on
+ * primitive arrays so the drive loop doesn't allocate anything in steady state.
+ */
+public class SwerveModuleBuffer {
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  /** Module speeds, in meters per second. */
+  public final double[] speeds;
+  /** Module angles relative to the chassis, in radians. */
+  public final double[] angles;
+
+  /**
+   * Creates a buffer for a drivetrain with the given module locations.
+   *
+   * @param moduleLocations The locations of the modules relative to the center of the robot, in the same order the
+   *                        setpoints will be read back in.
+   */
+  public SwerveModuleBuffer(Translation2d... moduleLocations) {
+    moduleX = new double[moduleLocations.length];
+    moduleY = new double[moduleLocations.length];
+    speeds = new double[moduleLocations.length];
+    angles = new double[moduleLocations.length];
+    for (int i = 0; i < moduleLocations.length; i++) {
+      moduleX[i] = moduleLocations[i].getX();
+      moduleY[i] = moduleLocations[i].getY();
+    }
+  }
+
+  /**
+   * @return The number of modules in this buffer.
+   */
+  public int size() {
+    return speeds.length;
+  }
+
+  /**
+   * @param index The index of the module.
+   * @return The x location of the module relative to the center of the robot, in meters.
+   */
+  public double getModuleX(int index) {
+    return moduleX[index];
+  }
+
+  /**
+   * @param index The index of the module.
+   * @return The y location of the module relative to the center of the robot, in meters.
+   */
+  public double getModuleY(int index) {
+    return moduleY[index];
+  }
+
+  /**
+   * Performs inverse kinematics, converting robot-relative chassis speeds into module setpoints. If the robot is
+   * commanded to stand still, the module speeds are zeroed and the previous angles are kept so the wheels don't snap
+   * back to 0 radians.
+   *
+   * @param vxMetersPerSecond     Robot-relative velocity in the x direction (forward).
+   * @param vyMetersPerSecond     Robot-relative velocity in the y direction (sideways).
+   * @param omegaRadiansPerSecond Angular rate of the robot, counter-clockwise positive.
+   */
+  public void fromChassisSpeeds(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond) {
+    if (vxMetersPerSecond == 0.0 && vyMetersPerSecond == 0.0 && omegaRadiansPerSecond == 0.0) {
+      for (int i = 0; i < speeds.length; i++) {
+        speeds[i] = 0.0;
+      }
+      return;
+    }
+
+    for (int i = 0; i < speeds.length; i++) {
+      final double x = vxMetersPerSecond - omegaRadiansPerSecond * moduleY[i];
+      final double y = vyMetersPerSecond + omegaRadiansPerSecond * moduleX[i];
+      speeds[i] = Math.hypot(x, y);
+      angles[i] = Math.atan2(y, x);
+    }
+  }
+
+  /**
+   * Scales every module speed down proportionally if any of them is above the attainable maximum, preserving the
+   * ratio between modules.
+   *
+   * @param maxSpeedMetersPerSecond The absolute max speed a module can reach.
+   */
+  public void desaturate(double maxSpeedMetersPerSecond) {
+    double realMaxSpeed = 0.0;
+    for (double speed : speeds) {
+      realMaxSpeed = Math.max(realMaxSpeed, Math.abs(speed));
+    }
+
+    if (realMaxSpeed > maxSpeedMetersPerSecond) {
+      final double scale = maxSpeedMetersPerSecond / realMaxSpeed;
+      for (int i = 0; i < speeds.length; i++) {
+        speeds[i] *= scale;
+      }
+    }
+  }
+}
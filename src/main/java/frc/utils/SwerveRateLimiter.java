@@ -0,0 +1,100 @@
+package frc.utils;
+
+/**
+ * Rate limits a joystick translation/rotation command for smoother control. Translation is limited in polar form,
+ * so the direction slews at a rate that depends on an estimate of the lateral acceleration, while the magnitude and
+ * rotation are slew rate limited independently.
+ *
+ * <p>The current time is passed in rather than read from the FPGA, so this has no hardware dependencies.
+ */
+public class SwerveRateLimiter {
+  private final double directionSlewRate;
+  private final double magnitudeSlewRate;
+  private final double rotationalSlewRate;
+
+  private double currentTranslationDir = 0.0;
+  private double currentTranslationMag = 0.0;
+  private double currentRotation = 0.0;
+  private double prevTime;
+
+  /**
+   * @param directionSlewRate  The direction slew rate, in radians per second.
+   * @param magnitudeSlewRate  The translation magnitude slew rate, in percent per second (1 = 100%).
+   * @param rotationalSlewRate The rotation slew rate, in percent per second (1 = 100%).
+   * @param currentTime        The current time, in seconds.
+   */
+  public SwerveRateLimiter(double directionSlewRate, double magnitudeSlewRate, double rotationalSlewRate, double currentTime) {
+    this.directionSlewRate = directionSlewRate;
+    this.magnitudeSlewRate = magnitudeSlewRate;
+    this.rotationalSlewRate = rotationalSlewRate;
+    this.prevTime = currentTime;
+  }
+
+  /**
+   * Steps the limiter towards the given inputs. Read the results back with {@link #getXSpeed()},
+   * {@link #getYSpeed()} and {@link #getRotation()}.
+   *
+   * @param xSpeed      Requested speed of the robot in the x direction (forward).
+   * @param ySpeed      Requested speed of the robot in the y direction (sideways).
+   * @param rot         Requested angular rate of the robot.
+   * @param currentTime The current time, in seconds.
+   */
+  public void calculate(double xSpeed, double ySpeed, double rot, double currentTime) {
+    // Convert XY to polar for rate limiting
+    double inputTranslationDir = Math.atan2(ySpeed, xSpeed);
+    double inputTranslationMag = Math.sqrt(xSpeed * xSpeed + ySpeed * ySpeed);
+
+    // Calculate the direction slew rate based on an estimate of the lateral acceleration
+    double directionSlewRate;
+    if (currentTranslationMag != 0.0) {
+      directionSlewRate = Math.abs(this.directionSlewRate / currentTranslationMag);
+    } else {
+      directionSlewRate = 500.0; //some high number that means the slew rate is effectively instantaneous
+    }
+
+    double elapsedTime = currentTime - prevTime;
+    double magnitudeStep = magnitudeSlewRate * elapsedTime;
+    double angleDif = SwerveUtils.AngleDifference(inputTranslationDir, currentTranslationDir);
+    if (angleDif < 0.45*Math.PI) {
+      currentTranslationDir = SwerveUtils.StepTowardsCircular(currentTranslationDir, inputTranslationDir, directionSlewRate * elapsedTime);
+      currentTranslationMag = SwerveUtils.StepTowards(currentTranslationMag, inputTranslationMag, magnitudeStep);
+    }
+    else if (angleDif > 0.85*Math.PI) {
+      if (currentTranslationMag > 1e-4) { //some small number to avoid floating-point errors with equality checking
+        // keep currentTranslationDir unchanged
+        currentTranslationMag = SwerveUtils.StepTowards(currentTranslationMag, 0.0, magnitudeStep);
+      }
+      else {
+        currentTranslationDir = SwerveUtils.WrapAngle(currentTranslationDir + Math.PI);
+        currentTranslationMag = SwerveUtils.StepTowards(currentTranslationMag, inputTranslationMag, magnitudeStep);
+      }
+    }
+    else {
+      currentTranslationDir = SwerveUtils.StepTowardsCircular(currentTranslationDir, inputTranslationDir, directionSlewRate * elapsedTime);
+      currentTranslationMag = SwerveUtils.StepTowards(currentTranslationMag, 0.0, magnitudeStep);
+    }
+    currentRotation = SwerveUtils.StepTowards(currentRotation, rot, rotationalSlewRate * elapsedTime);
+    prevTime = currentTime;
+  }
+
+  /**
+   * @return The rate limited speed in the x direction (forward).
+   */
+  public double getXSpeed() {
+    return currentTranslationMag * Math.cos(currentTranslationDir);
+  }
+
+  /**
+   * @return The rate limited speed in the y direction (sideways).
+   */
+  public double getYSpeed() {
+    return currentTranslationMag * Math.sin(currentTranslationDir);
+  }
+
+  /**
+   * @return The rate limited angular rate.
+   */
+  public double getRotation() {
+    return currentRotation;
+  }
+}
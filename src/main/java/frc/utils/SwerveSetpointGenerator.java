@@ -0,0 +1,173 @@
+package frc.utils;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Turns desired chassis speeds into module setpoints the modules can actually reach from their previous setpoints.
+ * Rather than jumping straight to the desired speeds, it moves the chassis speeds part of the way there, as far as
+ * it can without any moving module having to steer faster than its max steering velocity or change speed faster than
+ * its max drive acceleration. Modules that are stopped may point anywhere, since they can't skid.
+ *
+ * <p>The previous setpoints are kept in (and the new ones written to) the {@link SwerveModuleBuffer} it was created
+ * with, so nothing is allocated per call.
+ */
+public class SwerveSetpointGenerator {
+  // Iterations of the bisection for the largest reachable step, which resolves it to 1/1024th
+  private static final int MAX_ITERATIONS = 10;
+  // Below this speed a module is considered stopped, and free to steer
+  private static final double STOPPED_METERS_PER_SECOND = 1e-3;
+
+  private final SwerveModuleBuffer setpoints;
+  private final double maxSpeed;
+  private final double maxSteeringVelocity;
+  private final double maxDriveAcceleration;
+
+  private double previousVx = 0.0;
+  private double previousVy = 0.0;
+  private double previousOmega = 0.0;
+  // Bit i is set if module i is being driven. Disabled modules don't limit the speeds or the step.
+  private int enabledModules = -1;
+
+  /**
+   * @param setpoints            The buffer to keep the setpoints in.
+   * @param maxSpeed             The max speed of a module, in meters per second.
+   * @param maxSteeringVelocity  The max rate a module can steer at, in radians per second.
+   * @param maxDriveAcceleration The max rate a module can change speed at, in meters per second squared.
+   */
+  public SwerveSetpointGenerator(SwerveModuleBuffer setpoints, double maxSpeed, double maxSteeringVelocity,
+                                 double maxDriveAcceleration) {
+    this.setpoints = setpoints;
+    this.maxSpeed = maxSpeed;
+    this.maxSteeringVelocity = maxSteeringVelocity;
+    this.maxDriveAcceleration = maxDriveAcceleration;
+  }
+
+  /**
+   * Sets which modules are being driven. A disabled module's setpoints are still written, but it no longer limits
+   * how fast the chassis speeds can change.
+   *
+   * @param mask A bitmask with bit i set if module i is enabled.
+   */
+  public void setEnabledModules(int mask) {
+    enabledModules = mask;
+  }
+
+  /**
+   * Forgets the previous chassis speeds, e.g. after the modules were commanded directly. The modules are treated as
+   * stopped, at whatever angles are currently in the buffer.
+   */
+  public void reset() {
+    previousVx = 0.0;
+    previousVy = 0.0;
+    previousOmega = 0.0;
+    for (int i = 0; i < setpoints.size(); i++) {
+      setpoints.speeds[i] = 0.0;
+    }
+  }
+
+  /**
+   * Steps the setpoints towards the desired robot-relative chassis speeds. Read the result from the buffer.
+   *
+   * @param vxMetersPerSecond     Desired velocity in the x direction (forward).
+   * @param vyMetersPerSecond     Desired velocity in the y direction (sideways).
+   * @param omegaRadiansPerSecond Desired angular rate of the robot, counter-clockwise positive.
+   * @param dtSeconds             The time since the previous setpoints were sent, in seconds.
+   */
+  public void generate(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond,
+                       double dtSeconds) {
+    // Desaturate the chassis speeds, which scales every module speed by the same ratio.
+    double fastestModule = 0.0;
+    for (int i = 0; i < setpoints.size(); i++) {
+      if (!isEnabled(i)) {
+        continue;
+      }
+      fastestModule = Math.max(fastestModule, moduleSpeed(i, vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond));
+    }
+    if (fastestModule > maxSpeed) {
+      final double scale = maxSpeed / fastestModule;
+      vxMetersPerSecond *= scale;
+      vyMetersPerSecond *= scale;
+      omegaRadiansPerSecond *= scale;
+    }
+
+    final double dvx = vxMetersPerSecond - previousVx;
+    final double dvy = vyMetersPerSecond - previousVy;
+    final double domega = omegaRadiansPerSecond - previousOmega;
+    final double maxSteering = maxSteeringVelocity * dtSeconds;
+    final double maxSpeedChange = maxDriveAcceleration * dtSeconds;
+
+    // The step towards the desired speeds is limited by whichever module can follow the least of it.
+    double step = 1.0;
+    for (int i = 0; i < setpoints.size(); i++) {
+      if (isEnabled(i) && !isReachable(i, 1.0, dvx, dvy, domega, maxSteering, maxSpeedChange)) {
+        double reachable = 0.0;
+        double unreachable = 1.0;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+          final double mid = (reachable + unreachable) / 2;
+          if (isReachable(i, mid, dvx, dvy, domega, maxSteering, maxSpeedChange)) {
+            reachable = mid;
+          } else {
+            unreachable = mid;
+          }
+        }
+        step = Math.min(step, reachable);
+      }
+    }
+
+    previousVx += dvx * step;
+    previousVy += dvy * step;
+    previousOmega += domega * step;
+    for (int i = 0; i < setpoints.size(); i++) {
+      final double x = moduleX(i, previousVx, previousOmega);
+      final double y = moduleY(i, previousVy, previousOmega);
+      setpoints.speeds[i] = Math.hypot(x, y);
+      // A stopped module keeps its angle, rather than snapping back to 0 radians.
+      if (setpoints.speeds[i] > STOPPED_METERS_PER_SECOND) {
+        setpoints.angles[i] = Math.atan2(y, x);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a module can follow the given fraction of the change in chassis speeds within one step.
+   */
+  private boolean isReachable(int module, double step, double dvx, double dvy, double domega,
+                              double maxSteering, double maxSpeedChange) {
+    final double omega = previousOmega + domega * step;
+    final double x = moduleX(module, previousVx + dvx * step, omega);
+    final double y = moduleY(module, previousVy + dvy * step, omega);
+    final double speed = Math.hypot(x, y);
+    final double previousSpeed = setpoints.speeds[module];
+    if (speed <= STOPPED_METERS_PER_SECOND) {
+      return previousSpeed <= maxSpeedChange;
+    }
+
+    // The module can drive backwards instead of turning more than 90 degrees, but then it has to slow to a stop
+    // before speeding back up.
+    final double angleChange = Math.abs(MathUtil.angleModulus(Math.atan2(y, x) - setpoints.angles[module]));
+    final boolean reversed = angleChange > Math.PI / 2;
+    final double speedChange = reversed ? previousSpeed + speed : Math.abs(speed - previousSpeed);
+    if (speedChange > maxSpeedChange) {
+      return false;
+    }
+
+    final double steering = reversed ? Math.PI - angleChange : angleChange;
+    return previousSpeed <= STOPPED_METERS_PER_SECOND || steering <= maxSteering;
+  }
+
+  private boolean isEnabled(int module) {
+    return (enabledModules & (1 << module)) != 0;
+  }
+
+  private double moduleSpeed(int module, double vx, double vy, double omega) {
+    return Math.hypot(moduleX(module, vx, omega), moduleY(module, vy, omega));
+  }
+
+  private double moduleX(int module, double vx, double omega) {
+    return vx - omega * setpoints.getModuleY(module);
+  }
+
+  private double moduleY(int module, double vy, double omega) {
+    return vy + omega * setpoints.getModuleX(module);
+  }
+}
@@ -0,0 +1,77 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that a {@link DriveSubsystem#drive} call, from the rate limiter through the setpoint generator to the
+ * modules' setpoints, doesn't allocate. Heading hold is left at its default, off: it steers with WPILib's
+ * ProfiledPIDController, which allocates its profile states every call.
+ */
+class DriveAllocationTest {
+  // Enough cycles for the JIT to compile the drive path; the interpreter can allocate where compiled code doesn't.
+  private static final int WARMUP_CYCLES = 20_000;
+  private static final int CYCLES = 5_000;
+  private static final double PERIOD = TimedRobot.kDefaultPeriod;
+
+  private static DriveSubsystem drive;
+
+  @BeforeAll static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+    // With the clock paused, time only moves when the test steps it. The odometry and gyro notifiers run then, but on
+    // their own threads, so they don't count against this one.
+    SimHooks.pauseTiming();
+    drive = new DriveSubsystem();
+  }
+
+  @AfterAll static void teardown() {
+    SimHooks.resumeTiming();
+  }
+
+  @Test void driveDoesNotAllocate() {
+    assertFalse(drive.isHeadingHoldEnabled());
+    final var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    final long thread = Thread.currentThread().getId();
+
+    int cycle = 0;
+    while (cycle < WARMUP_CYCLES) {
+      step(cycle++);
+    }
+
+    // Whatever reading the counter costs by itself isn't the drive's.
+    final long calibration = threads.getThreadAllocatedBytes(thread);
+    final long overhead = threads.getThreadAllocatedBytes(thread) - calibration;
+    final long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < CYCLES; i++) {
+      step(cycle++);
+    }
+    final long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+    assertEquals(0, allocated, "bytes allocated by " + CYCLES + " drive cycles");
+  }
+
+  /**
+   * Runs one cycle of field relative, rate limited driving, with inputs that keep changing so the rate limiter and the
+   * setpoint generator never settle, then steps the clock.
+   */
+  private static void step(int cycle) {
+    final double t = cycle * PERIOD;
+    drive.drive(0.8 * Math.sin(2 * Math.PI * t / 5.0), 0.6 * Math.cos(2 * Math.PI * t / 7.0),
+            0.5 * Math.sin(2 * Math.PI * t / 3.0), true, true);
+    SimHooks.stepTiming(PERIOD);
+  }
+}
@@ -0,0 +1,67 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.Constants.DriveConstants;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that sampling odometry, which runs on its own thread at {@link DriveConstants#ODOMETRY_FREQUENCY_HZ}, doesn't
+ * allocate while the robot sits still. A moving robot isn't covered: every changed module angle and heading needs a
+ * new Rotation2d, see {@link DriveSubsystem#sampleOdometry}. Neither is WPILib's pose estimator, which the samples are
+ * handed to. The drive command path is covered by {@link DriveAllocationTest}.
+ */
+class DriveOdometryAllocationTest {
+  // Enough samples for the JIT to compile the sampling path; the interpreter can allocate where compiled code doesn't.
+  private static final int WARMUP_SAMPLES = 50_000;
+  private static final int SAMPLES = 10_000;
+  private static final double PERIOD = 1.0 / DriveConstants.ODOMETRY_FREQUENCY_HZ;
+
+  private static DriveSubsystem drive;
+
+  @BeforeAll static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+    // With the clock paused, the odometry and gyro notifiers never run, so the test thread has the drive to itself.
+    SimHooks.pauseTiming();
+    drive = new DriveSubsystem();
+  }
+
+  @AfterAll static void teardown() {
+    SimHooks.resumeTiming();
+  }
+
+  // The robot sits still here, so every sample reads the same angles and heading as the one before it.
+  @Test void sampleOdometryDoesNotAllocate() {
+    final var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    final long thread = Thread.currentThread().getId();
+
+    double timestamp = 0.0;
+    for (int i = 0; i < WARMUP_SAMPLES; i++) {
+      drive.sampleOdometry(timestamp);
+      timestamp += PERIOD;
+    }
+
+    // Whatever reading the counter costs by itself isn't the odometry's.
+    final long calibration = threads.getThreadAllocatedBytes(thread);
+    final long overhead = threads.getThreadAllocatedBytes(thread) - calibration;
+    final long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < SAMPLES; i++) {
+      drive.sampleOdometry(timestamp);
+      timestamp += PERIOD;
+    }
+    final long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+    assertEquals(0, allocated, "bytes allocated by " + SAMPLES + " odometry samples");
+  }
+}
@@ -0,0 +1,138 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import frc.robot.Constants.IOConstants;
+import frc.robot.commands.SwerveDriveCommand;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Headless regression tests of odometry and teleop, driving the simulated drivetrain faster than real time and
+ * comparing the odometry against the simulation's ground truth.
+ */
+class DriveSimulationTest {
+  private static final double PERIOD = TimedRobot.kDefaultPeriod;
+  private static final double TRANSLATION_TOLERANCE = 0.2; // meters
+  private static final double HEADING_TOLERANCE = Math.toRadians(3.0);
+
+  private static DriveSubsystem drive;
+  private static XboxControllerSim controllerSim;
+  private static SwerveDriveCommand teleop;
+
+  @BeforeAll static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+    // With the clock paused, time only moves when a test steps it, so the notifiers run in lockstep with the loop.
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.setAutonomous(false);
+    DriverStationSim.notifyNewData();
+
+    drive = new DriveSubsystem();
+    controllerSim = new XboxControllerSim(IOConstants.DRIVER_CONTROLLER_PORT);
+    teleop = new SwerveDriveCommand(new CommandXboxController(IOConstants.DRIVER_CONTROLLER_PORT), drive);
+  }
+
+  @AfterAll static void teardown() {
+    SimHooks.resumeTiming();
+  }
+
+  @BeforeEach void settle() {
+    controllerSim.setLeftX(0.0);
+    controllerSim.setLeftY(0.0);
+    controllerSim.setRightX(0.0);
+    run(1.0, () -> drive.drive(0, 0, 0, false, false));
+    drive.resetOdometry(drive.getSimulatedPose());
+  }
+
+  @Test void odometryTracksTheSimulatedRobot() {
+    // Translate and rotate at the same time, which is where swerve odometry error shows up.
+    run(3.0, () -> drive.drive(0.4, 0.3, 0.3, true, false));
+    run(1.0, () -> drive.drive(0, 0, 0, true, false));
+
+    assertPoseMatchesSimulation();
+  }
+
+  @Test void headingDoesNotWrap() {
+    final double start = drive.getContinuousHeadingRadians();
+    // A couple of full turns at full rotation speed.
+    run(3.0, () -> drive.drive(0, 0, 1.0, true, false));
+    run(1.0, () -> drive.drive(0, 0, 0, true, false));
+
+    assertTrue(drive.getContinuousHeadingRadians() - start > 3 * Math.PI,
+            "heading only went from " + start + " to " + drive.getContinuousHeadingRadians() + " radians");
+    assertPoseMatchesSimulation();
+  }
+
+  @Test void turningIsNotMistakenForSlip() {
+    final int[] slipping = {0};
+    // In place, then while translating. If slip detection didn't see the turn in the gyro rate, each module would look
+    // about a meter per second off.
+    run(2.0, () -> {
+      drive.drive(0, 0, 0.2, true, false);
+      slipping[0] |= drive.getSlippingModules();
+    });
+    run(2.0, () -> {
+      drive.drive(0.3, 0.2, 0.2, true, false);
+      slipping[0] |= drive.getSlippingModules();
+    });
+    run(1.0, () -> drive.drive(0, 0, 0, true, false));
+
+    assertEquals(0, slipping[0], "modules flagged as slipping: " + Integer.toBinaryString(slipping[0]));
+    assertPoseMatchesSimulation();
+  }
+
+  @Test void teleopDrivesForwardWithTheLeftStick() {
+    final double startX = drive.getSimulatedPose().getX();
+    final double startY = drive.getSimulatedPose().getY();
+    final double startHeading = drive.getSimulatedPose().getRotation().getRadians();
+    teleop.initialize();
+    controllerSim.setLeftY(0.5);
+    run(2.0, teleop::execute);
+    controllerSim.setLeftY(0.0);
+    run(1.0, teleop::execute);
+
+    final var pose = drive.getSimulatedPose();
+    assertTrue(pose.getX() - startX > 1.0, "only drove " + (pose.getX() - startX) + " m forward");
+    assertEquals(startY, pose.getY(), TRANSLATION_TOLERANCE);
+    assertEquals(0.0, MathUtil.angleModulus(pose.getRotation().getRadians() - startHeading), HEADING_TOLERANCE);
+    assertPoseMatchesSimulation();
+  }
+
+  /**
+   * Runs the robot loop for a while: the given command, then the drive's periodic and simulation updates, then the
+   * clock, which also runs the odometry and gyro notifiers.
+   */
+  private static void run(double seconds, Runnable command) {
+    final int cycles = (int) Math.round(seconds / PERIOD);
+    for (int i = 0; i < cycles; i++) {
+      DriverStationSim.notifyNewData();
+      DriverStation.refreshData();
+      command.run();
+      drive.periodic();
+      drive.simulationPeriodic();
+      SimHooks.stepTiming(PERIOD);
+    }
+  }
+
+  private static void assertPoseMatchesSimulation() {
+    final var estimated = drive.getPose();
+    final var simulated = drive.getSimulatedPose();
+    assertEquals(0.0, estimated.getTranslation().getDistance(simulated.getTranslation()), TRANSLATION_TOLERANCE,
+            "odometry " + estimated + " vs simulated " + simulated);
+    assertEquals(0.0, MathUtil.angleModulus(estimated.getRotation().minus(simulated.getRotation()).getRadians()),
+            HEADING_TOLERANCE, "odometry " + estimated + " vs simulated " + simulated);
+  }
+}
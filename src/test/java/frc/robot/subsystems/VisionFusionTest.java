@@ -0,0 +1,99 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the simulated drivetrain with {@link SimulatedVision} feeding noisy, delayed measurements of the ground truth
+ * pose into the pose estimator, and checks the fused pose against that ground truth.
+ */
+class VisionFusionTest {
+  private static final double PERIOD = TimedRobot.kDefaultPeriod;
+  // Well beyond the simulated vision noise, but within the outlier gate, so vision has to pull it back.
+  private static final Transform2d INITIAL_ERROR = new Transform2d(new Translation2d(0.4, -0.3), new Rotation2d());
+  private static final double CONVERGED_ERROR = 0.1; // meters
+
+  private static DriveSubsystem drive;
+  private static SimulatedVision vision;
+
+  @BeforeAll static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+    // With the clock paused, time only moves when a test steps it, so the notifiers run in lockstep with the loop.
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+    drive = new DriveSubsystem();
+    vision = new SimulatedVision(drive);
+  }
+
+  @AfterAll static void teardown() {
+    SimHooks.resumeTiming();
+  }
+
+  @BeforeEach void settle() {
+    run(1.0, () -> drive.drive(0, 0, 0, false, false));
+    drive.resetOdometry(drive.getSimulatedPose());
+  }
+
+  @Test void visionCorrectsAnOdometryError() {
+    drive.resetOdometry(drive.getSimulatedPose().plus(INITIAL_ERROR));
+    final double initialError = error();
+
+    run(5.0, () -> drive.drive(0.3, 0.2, 0.2, true, false));
+    run(1.0, () -> drive.drive(0, 0, 0, true, false));
+
+    assertTrue(error() < CONVERGED_ERROR, "pose error went from " + initialError + " to " + error() + " m");
+  }
+
+  @Test void visionOutliersAreRejected() {
+    final int rejected = drive.getRejectedVisionMeasurements();
+    // Every half second, a measurement that's meters off, like a misidentified tag.
+    final double[] nextOutlier = { Timer.getFPGATimestamp() };
+    run(5.0, () -> {
+      drive.drive(0.3, 0.2, 0.2, true, false);
+      final double now = Timer.getFPGATimestamp();
+      if (now >= nextOutlier[0]) {
+        nextOutlier[0] = now + 0.5;
+        final var truth = drive.getSimulatedPose();
+        drive.addVisionMeasurement(new Pose2d(truth.getX() + 3.0, truth.getY() - 2.0, truth.getRotation()), now);
+      }
+    });
+
+    assertEquals(10, drive.getRejectedVisionMeasurements() - rejected);
+    assertTrue(error() < CONVERGED_ERROR, "pose error is " + error() + " m");
+  }
+
+  /**
+   * Runs the robot loop for a while: the given command, then the drive's and vision's periodic and simulation
+   * updates, then the clock, which also runs the odometry and gyro notifiers.
+   */
+  private static void run(double seconds, Runnable command) {
+    final int cycles = (int) Math.round(seconds / PERIOD);
+    for (int i = 0; i < cycles; i++) {
+      command.run();
+      drive.periodic();
+      drive.simulationPeriodic();
+      vision.simulationPeriodic();
+      SimHooks.stepTiming(PERIOD);
+    }
+  }
+
+  private static double error() {
+    return drive.getPose().getTranslation().getDistance(drive.getSimulatedPose().getTranslation());
+  }
+}